@@ -331,9 +331,15 @@ public class Output implements OutputInterface {
             if (lit.negative)
                 formatter.end();
         } else if (lit0 instanceof ProductLiteral) {
-            throw new SugarException("Unsupported literal: " + lit0);
+            ProductLiteral lit = (ProductLiteral)lit0;
+            formatter.begin(SugarConstants.EQ).add(lit.getV().getName());
+            formatter.begin(SugarConstants.MUL).add(lit.getV1().getName()).add(lit.getV2().getName()).end();
+            formatter.end();
         } else if (lit0 instanceof PowerLiteral) {
-            throw new SugarException("Unsupported literal: " + lit0);
+            PowerLiteral lit = (PowerLiteral)lit0;
+            formatter.begin(SugarConstants.EQ).add(lit.getV().getName());
+            formatter.begin(SugarConstants.POW).add(lit.getV1().getName()).add(lit.getExponent()).end();
+            formatter.end();
         } else {
             throw new SugarException("Unknown literal: " + lit0);
         }
@@ -10,6 +10,7 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.zip.GZIPInputStream;
@@ -23,8 +24,17 @@ import jp.kobe_u.sugar.csp.IntegerDomain;
 import jp.kobe_u.sugar.csp.IntegerDomainDiet;
 import jp.kobe_u.sugar.csp.IntegerDomainIntervals;
 import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.encoder.AbstractEncoder;
+import jp.kobe_u.sugar.encoder.BinaryFileProblem;
+import jp.kobe_u.sugar.encoder.CardinalityEncoder;
+import jp.kobe_u.sugar.encoder.ClauseStats;
+import jp.kobe_u.sugar.encoder.CountingProblem;
 import jp.kobe_u.sugar.encoder.Encoder;
 import jp.kobe_u.sugar.encoder.Encoding;
+import jp.kobe_u.sugar.encoder.FileProblem;
+import jp.kobe_u.sugar.encoder.OrderEncoder;
+import jp.kobe_u.sugar.encoder.ParallelGzipWriter;
+import jp.kobe_u.sugar.encoder.PipeProblem;
 import jp.kobe_u.sugar.encoder.Problem;
 import jp.kobe_u.sugar.expression.Expression;
 import jp.kobe_u.sugar.expression.Parser;
@@ -52,6 +62,16 @@ public class SugarMain {
     static boolean pb = false;
     static PBEncoder.Encoding pbEncoding = null;
     static boolean hybrid = false;
+    static boolean binary = false;
+    static boolean countClauses = true;
+    /**
+     * The SAT encoding is counted by categories before writing it when true,
+     * and it is aborted if the estimated size exceeds FileProblem.MAX_SAT_SIZE.
+     * Only the estimation is done when dryRun is true.
+     */
+    static boolean estimate = false;
+    static boolean dryRun = false;
+    static String statsFileName = null;
     public static int debug = 0;
 
     private List<Expression> toMaxCSP(List<Expression> expressions0) throws SugarException {
@@ -267,13 +287,131 @@ public class SugarMain {
         if (csp.isUnsatisfiable()) {
             return;
         }
+        encodeSAT(satFileName, mapFileName);
+    }
+    
+    /*
+     * Counts the SAT encoding by categories and reports them.
+     * The size is estimated as the DIMACS file.
+     */
+    private CountingProblem estimateSAT(Encoder encoder) throws SugarException {
+        Logger.fine("Estimating SAT size");
+        CountingProblem problem = new CountingProblem(true);
+        problem.maxSize = FileProblem.MAX_SAT_SIZE;
+        encoder.encode(problem);
+        for (Map.Entry<String,long[]> e : problem.getCategories().entrySet()) {
+            long[] totals = e.getValue();
+            if (totals[0] == 0 && totals[1] == 0 && totals[2] == 0)
+                continue;
+            String s = "SAT estimate : " + e.getKey() + " : " + totals[0] + " variables, "
+                + totals[1] + " clauses, " + totals[2] + " bytes";
+            if (dryRun)
+                Logger.println("c " + s);
+            else
+                Logger.info(s);
+        }
+        if (dryRun)
+            Logger.println("c SAT estimate : " + problem.summary());
+        else
+            Logger.info("SAT estimate : " + problem.summary());
+        return problem;
+    }
+
+    private void encodeSAT(String satFileName, String mapFileName)
+    throws SugarException, IOException {
         Logger.fine("Encoding CSP to SAT : " + satFileName);
         Encoder encoder = new Encoder(csp);
-        encoder.encode(satFileName);
+        if (estimate || dryRun) {
+            estimateSAT(encoder);
+            if (dryRun)
+                return;
+        }
+        Problem problem;
+        if (binary)
+            problem = new BinaryFileProblem(satFileName);
+        else
+            problem = new FileProblem(satFileName);
+        if (statsFileName != null)
+            problem.stats = new ClauseStats();
+        encoder.encode(problem);
         Logger.fine("Writing map file : " + mapFileName);
         encoder.outputMap(mapFileName);
         Logger.status();
         Logger.info("SAT : " + encoder.summary());
+        outputStats(problem);
+    }
+    
+    private void outputStats(Problem problem) throws IOException {
+        if (problem.stats == null)
+            return;
+        Logger.info("SAT clauses : " + problem.stats.summary());
+        Logger.fine("Writing statistics : " + statsFileName);
+        problem.stats.output(statsFileName, problem);
+    }
+    
+    /**
+     * Translates the CSP once and encodes it into several formats.
+     * The CSP is translated with the settings for SAT encoding.
+     * Since encoders store SAT codes in the CSP variables,
+     * they are run one after another, and each map file is written
+     * just after its encoding.
+     * The hybrid encoding modifies the CSP, therefore it is done last.
+     * A null file name skips the corresponding format.
+     */
+    public void encodeAll(String cspFileName, String satFileName, String satMapFileName,
+            String pbFileName, String pbMapFileName,
+            String hybridFileName, String hybridMapFileName)
+    throws SugarException, IOException {
+        translate(cspFileName);
+        if (csp.isUnsatisfiable()) {
+            return;
+        }
+        if (satFileName != null)
+            encodeSAT(satFileName, satMapFileName);
+        if (pbFileName != null) {
+            PBEncoder.Encoding encoding = pbEncoding;
+            if (encoding == null)
+                encoding = PBEncoder.Encoding.ORDER_ENCODING;
+            encodePB(pbFileName, pbMapFileName, encoding);
+        }
+        if (hybridFileName != null)
+            encodeHybridPB(hybridFileName, hybridMapFileName);
+    }
+    
+    public void solve(String cspFileName, String outFileName, String mapFileName, String solver)
+    throws SugarException, IOException {
+        translate(cspFileName);
+        if (csp.isUnsatisfiable()) {
+            return;
+        }
+        Encoder encoder = new Encoder(csp);
+        int variablesCount = 0;
+        int clausesCount = -1;
+        if (estimate || dryRun) {
+            CountingProblem countingProblem = estimateSAT(encoder);
+            if (dryRun)
+                return;
+            variablesCount = countingProblem.variablesCount;
+            clausesCount = countingProblem.clausesCount;
+        } else if (countClauses) {
+            Logger.fine("Counting SAT clauses");
+            CountingProblem countingProblem = new CountingProblem();
+            encoder.encode(countingProblem);
+            variablesCount = countingProblem.variablesCount;
+            clausesCount = countingProblem.clausesCount;
+        }
+        Logger.fine("Encoding CSP to SAT : " + solver);
+        PipeProblem problem = new PipeProblem(solver.trim().split("\\s+"), outFileName,
+                variablesCount, clausesCount);
+        if (statsFileName != null)
+            problem.stats = new ClauseStats();
+        encoder.encode(problem);
+        Logger.fine("Writing map file : " + mapFileName);
+        encoder.outputMap(mapFileName);
+        Logger.status();
+        Logger.info("SAT : " + encoder.summary());
+        outputStats(problem);
+        decode(outFileName, mapFileName);
     }
     
     public void decode(String outFileName, String mapFileName)
@@ -340,6 +478,18 @@ public class SugarMain {
                 BooleanVariable v = new BooleanVariable(name);
                 v.setCode(code);
                 csp.add(v);
+            } else if (s[0].equals("encoding")) {
+                String name = s[1];
+                String encoding = s[2];
+                if (encoding.equals("order")) {
+                    csp.getIntegerVariable(name).setEncoding(Encoding.ORDER);
+                } else if (encoding.equals("compact")) {
+                    IntegerVariable v = csp.getIntegerVariable(name);
+                    v.setEncoding(Encoding.COMPACT_ORDER);
+                    v.setBase(Integer.parseInt(s[3]));
+                } else {
+                    throw new SugarException("Unknown encoding " + encoding);
+                }
             }
         }
         rd.close();
@@ -399,6 +549,11 @@ public class SugarMain {
         if (csp.isUnsatisfiable()) {
             return;
         }
+        encodeHybridPB(pbFileName, mapFileName);
+    }
+
+    private void encodeHybridPB(String pbFileName, String mapFileName)
+    throws SugarException, IOException {
         Logger.fine("Hybrid Encoding CSP to PB : " + pbFileName);
         HybridConverter hybridConverter = new HybridConverter(csp);
         hybridConverter.convert();
@@ -544,9 +699,14 @@ public class SugarMain {
         if (csp.isUnsatisfiable()) {
             return;
         }
+        encodePB(pbFileName, mapFileName, pbEncoding);
+    }
+
+    private void encodePB(String pbFileName, String mapFileName, PBEncoder.Encoding encoding)
+    throws SugarException, IOException {
         Logger.fine("Encoding CSP to PB : " + pbFileName);
         PBProblem problem = new PBFileProblem(pbFileName);
-        PBEncoder pbEncoder = new PBEncoder(csp, problem, pbEncoding);
+        PBEncoder pbEncoder = new PBEncoder(csp, problem, encoding);
         pbEncoder.encode();
         Logger.fine("Writing map file : " + mapFileName);
         pbEncoder.outputMap(mapFileName);
@@ -738,6 +898,8 @@ public class SugarMain {
             Converter.DECOMPOSE_GLOBAL_CARDINALITY = ! opt.startsWith("no_");
         } else if (opt.matches("(no_)?decomp(ose)?_(global_cardinality_with_costs|gcc)")) {
             Converter.DECOMPOSE_GLOBAL_CARDINALITY_WITH_COSTS = ! opt.startsWith("no_");
+        } else if (opt.matches("(no_)?decomp(ose)?_(product|mul)")) {
+            Converter.DECOMPOSE_PRODUCT = ! opt.startsWith("no_");
         } else if (opt.matches("(no_)?hints")) {
             Converter.HINT_ALLDIFF_PIGEON = ! opt.startsWith("no_");
         } else if (opt.matches("(no_)?hint_alldiff_pigeon") || opt.matches("(no_)?pigeon")) {
@@ -750,6 +912,8 @@ public class SugarMain {
             Converter.MAX_LINEARSUM_SIZE = Long.parseLong(s[1]);
         } else if (opt.matches("split=(\\d+)")) {
             Converter.SPLITS = Integer.parseInt(s[1]);
+        } else if (opt.matches("(no_)?autosplit")) {
+            Converter.AUTO_SPLIT = ! opt.startsWith("no_");
         } else if (opt.matches("(no_)?use_eq")) {
             Converter.USE_EQ = ! opt.startsWith("no_");
         } else if (opt.matches("(no_)?equiv(_translation)?")) {
@@ -758,6 +922,8 @@ public class SugarMain {
             Converter.HOLD_CONSTRAINTS = ! opt.startsWith("no_");
         } else if (opt.matches("(no_)?diet")) {
             IntegerDomain.USE_DIET_DOMAIN = ! opt.startsWith("no_");
+        } else if (opt.matches("(no_)?intern")) {
+            Expression.intern = ! opt.startsWith("no_");
         } else if (opt.matches("domain=(\\d+)")) {
             int size = Integer.parseInt(s[1]);
             IntegerDomainIntervals.MAX_SET_SIZE = size;
@@ -793,6 +959,63 @@ public class SugarMain {
             Problem.GCNF = ! opt.startsWith("no_");
         } else if (opt.matches("(no_)?gwcnf")) {
             Problem.GWCNF = ! opt.startsWith("no_");
+        } else if (opt.matches("(no_)?fast_write")) {
+            FileProblem.USE_FAST_WRITE = ! opt.startsWith("no_");
+        } else if (opt.matches("sat_buffer=(\\d+)")) {
+            FileProblem.SAT_BUFFER_SIZE = Math.max(FileProblem.MIN_BUFFER_SIZE, Integer.parseInt(s[1]));
+        } else if (opt.matches("(no_)?mdd")) {
+            OrderEncoder.USE_MDD = ! opt.startsWith("no_");
+        } else if (opt.matches("mdd=(\\d+)")) {
+            OrderEncoder.USE_MDD = true;
+            OrderEncoder.MDD_MIN_SIZE = Integer.parseInt(s[1]);
+        } else if (opt.matches("card=(totalizer|mtotalizer|counter|sorter)")) {
+            if (s[1].equals("totalizer"))
+                OrderEncoder.CARDINALITY_ENCODING = CardinalityEncoder.Encoding.TOTALIZER;
+            else if (s[1].equals("mtotalizer"))
+                OrderEncoder.CARDINALITY_ENCODING = CardinalityEncoder.Encoding.MODULO_TOTALIZER;
+            else if (s[1].equals("counter"))
+                OrderEncoder.CARDINALITY_ENCODING = CardinalityEncoder.Encoding.SEQUENTIAL_COUNTER;
+            else
+                OrderEncoder.CARDINALITY_ENCODING = CardinalityEncoder.Encoding.SORTING_NETWORK;
+        } else if (opt.matches("no_card")) {
+            OrderEncoder.CARDINALITY_ENCODING = null;
+        } else if (opt.matches("card_min=(\\d+)")) {
+            OrderEncoder.CARDINALITY_MIN_SIZE = Integer.parseInt(s[1]);
+        } else if (opt.matches("(no_)?support")) {
+            OrderEncoder.SUPPORT_ENCODING = ! opt.startsWith("no_");
+        } else if (opt.matches("compact=(\\d+)")) {
+            OrderEncoder.COMPACT_ORDER_MIN_SIZE = Integer.parseInt(s[1]);
+        } else if (opt.matches("compact_base=(\\d+)")) {
+            OrderEncoder.COMPACT_ORDER_BASE = Math.max(2, Integer.parseInt(s[1]));
+        } else if (opt.matches("encode_threads=(\\d+)")) {
+            AbstractEncoder.THREADS = Integer.parseInt(s[1]);
+        } else if (opt.matches("(no_)?dedup")) {
+            Problem.DEDUP = ! opt.startsWith("no_");
+        } else if (opt.matches("dedup_table=(\\d+)")) {
+            Problem.DEDUP_TABLE_SIZE = Integer.parseInt(s[1]);
+        } else if (opt.matches("(no_)?unit_simplify")) {
+            Problem.UNIT_SIMPLIFY = ! opt.startsWith("no_");
+        } else if (opt.matches("(no_)?count_clauses")) {
+            countClauses = ! opt.startsWith("no_");
+        } else if (opt.matches("(no_)?estimate")) {
+            estimate = ! opt.startsWith("no_");
+        } else if (opt.matches("(no_)?dry_run")) {
+            dryRun = ! opt.startsWith("no_");
+        } else if (opt.matches("max_sat_size=(\\d+)")) {
+            FileProblem.MAX_SAT_SIZE = Long.parseLong(s[1]);
+        } else if (opt.matches("(no_)?binary")) {
+            binary = ! opt.startsWith("no_");
+        } else if (opt.matches("(no_)?mmap")) {
+            FileProblem.USE_MMAP = ! opt.startsWith("no_");
+            PBFileProblem.USE_MMAP = ! opt.startsWith("no_");
+        } else if (opt.matches("gzip_level=(\\d)")) {
+            ParallelGzipWriter.LEVEL = Integer.parseInt(s[1]);
+        } else if (opt.matches("gzip_threads=(\\d+)")) {
+            ParallelGzipWriter.THREADS = Integer.parseInt(s[1]);
+        } else if (opt.matches("mmap_chunk=(\\d+)")) {
+            int size = Math.max(FileProblem.MIN_BUFFER_SIZE, Integer.parseInt(s[1]));
+            FileProblem.MMAP_CHUNK_SIZE = size;
+            PBFileProblem.MMAP_CHUNK_SIZE = size;
         } else if (opt.matches("simp_cache=(\\d+)")) {
             int size = Integer.parseInt(s[1]);
             if (size <= 0) {
@@ -844,6 +1067,7 @@ public class SugarMain {
         try {
             setDefaultOptions();
             String outputHook = null;
+            String solver = null;
             String option = "";
             int i = 0;
             while (i < args.length) {
@@ -889,6 +1113,12 @@ public class SugarMain {
                 } else if (args[i].equals("-outputHook") && i + 1 < args.length) {
                     outputHook = args[i+1];
                     i++;
+                } else if (args[i].equals("-solver") && i + 1 < args.length) {
+                    solver = args[i+1];
+                    i++;
+                } else if (args[i].equals("-stats") && i + 1 < args.length) {
+                    statsFileName = args[i+1];
+                    i++;
                 } else if (args[i].equals("-v") || args[i].equals("-verbose")) {
                     Logger.verboseLevel++;
                 } else if (args[i].startsWith("-")) {
@@ -916,6 +1146,24 @@ public class SugarMain {
                     sugarMain.encodePB(cspFileName, satFileName, mapFileName);
                 else
                     sugarMain.encode(cspFileName, satFileName, mapFileName);
+            } else if (option.equals("-encodeAll") && (n == 6 || n == 8)) {
+                String[] files = new String[6];
+                for (int j = 0; j < n - 2; j++) {
+                    if (! args[i+2+j].equals("-"))
+                        files[j] = args[i+2+j];
+                }
+                sugarMain.encodeAll(args[i+1], files[0], files[1],
+                        files[2], files[3], files[4], files[5]);
+            } else if (option.equals("-solve") && n == 4 && solver != null) {
+                String cspFileName = args[i+1];
+                String outFileName = args[i+2];
+                String mapFileName = args[i+3];
+                sugarMain.solve(cspFileName, outFileName, mapFileName, solver);
+            } else if (option.equals("-binary2cnf") && n == 3) {
+                String binFileName = args[i+1];
+                String cnfFileName = args[i+2];
+                Logger.fine("Converting " + binFileName + " to " + cnfFileName);
+                BinaryFileProblem.toDimacs(binFileName, cnfFileName);
             } else if (option.equals("-decode") && n == 3) {
                 String outFileName = args[i+1];
                 String mapFileName = args[i+2];
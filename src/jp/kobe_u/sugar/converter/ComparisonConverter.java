@@ -7,6 +7,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.SugarMain;
@@ -21,7 +23,9 @@ import jp.kobe_u.sugar.csp.LinearLiteral;
 import jp.kobe_u.sugar.csp.LinearNeLiteral;
 import jp.kobe_u.sugar.csp.LinearSum;
 import jp.kobe_u.sugar.csp.Literal;
+import jp.kobe_u.sugar.csp.PowerLiteral;
 import jp.kobe_u.sugar.csp.ProductLiteral;
+import jp.kobe_u.sugar.encoder.OrderEncoder;
 import jp.kobe_u.sugar.expression.Atom;
 import jp.kobe_u.sugar.expression.Expression;
 import jp.kobe_u.sugar.expression.Sequence;
@@ -144,6 +148,25 @@ public class ComparisonConverter {
             return e1;
         } else if (d1.size() > d2.size()) {
             return convertMUL((Sequence)x2.mul(x1));
+        } else if (! Converter.DECOMPOSE_PRODUCT) {
+            long[] bounds = {
+                    (long)d1.getLowerBound() * d2.getLowerBound(),
+                    (long)d1.getLowerBound() * d2.getUpperBound(),
+                    (long)d1.getUpperBound() * d2.getLowerBound(),
+                    (long)d1.getUpperBound() * d2.getUpperBound() };
+            for (long p : bounds) {
+                if (p > Integer.MAX_VALUE / 2 || p < Integer.MIN_VALUE / 2) {
+                    throw new SugarException("Too large value in " + seq);
+                }
+            }
+            IntegerVariable v1 = toIntegerVariable(e1, x1);
+            IntegerVariable v2 = toIntegerVariable(e2, x2);
+            IntegerVariable prod = newIntegerVariable(d1.mul(d2), seq);
+            Clause clause = new Clause(new ProductLiteral(prod, v1, v2));
+            clause.setComment(prod.getName() + " == " + seq);
+            csp.add(clause);
+            converter.addEquivalence(prod, seq);
+            return new LinearSum(prod);
         } else if (false) {
             Expression x = null;
             Iterator<Integer> iter = d1.values();
@@ -273,9 +296,44 @@ public class ComparisonConverter {
     }
     
     private LinearSum convertPOW(Sequence seq) throws SugarException {
-        // TODO pow
-        throw new SugarException("Unsupported " + seq);
-        // return null;
+        converter.checkArity(seq, 2);
+        Expression x1 = seq.get(1);
+        Expression x2 = seq.get(2);
+        LinearSum e1 = convertFormula(x1);
+        LinearSum e2 = convertFormula(x2);
+        IntegerDomain d1 = e1.getDomain();
+        IntegerDomain d2 = e2.getDomain();
+        if (d2.size() != 1 || d2.getLowerBound() < 0) {
+            throw new SugarException("Unsupported " + seq);
+        }
+        int k = d2.getLowerBound();
+        if (k == 0) {
+            return new LinearSum(1);
+        } else if (k == 1) {
+            return e1;
+        } else if (d1.size() == 1 || Converter.DECOMPOSE_PRODUCT) {
+            Expression x = x1;
+            for (int i = 1; i < k; i++) {
+                x = x.mul(x1);
+            }
+            return convertFormula(x);
+        }
+        SortedSet<Integer> values = new TreeSet<Integer>();
+        Iterator<Integer> iter = d1.values();
+        while (iter.hasNext()) {
+            long p = PowerLiteral.power(iter.next(), k);
+            if (p > Integer.MAX_VALUE / 2 || p < Integer.MIN_VALUE / 2) {
+                throw new SugarException("Too large value in " + seq);
+            }
+            values.add((int)p);
+        }
+        IntegerVariable v1 = toIntegerVariable(e1, x1);
+        IntegerVariable pv = newIntegerVariable(IntegerDomain.create(values), seq);
+        Clause clause = new Clause(new PowerLiteral(pv, v1, k));
+        clause.setComment(pv.getName() + " == " + seq);
+        csp.add(clause);
+        converter.addEquivalence(pv, seq);
+        return new LinearSum(pv);
     }
     
     private LinearSum convertMIN(Sequence seq) throws SugarException {
@@ -372,27 +430,39 @@ public class ComparisonConverter {
                 e = convertString((Atom)x);
             }
         } else {
-            if (x.isSequence(Expression.ADD)) {
+            switch (x.getOpcode()) {
+            case Expression.OP_ADD:
                 e = convertADD((Sequence)x);
-            } else if (x.isSequence(Expression.NEG) || x.isSequence(Expression.SUB)) {
+                break;
+            case Expression.OP_NEG:
+            case Expression.OP_SUB:
                 e = convertSUB((Sequence)x);
-            } else if (x.isSequence(Expression.ABS)) {
+                break;
+            case Expression.OP_ABS:
                 e = convertABS((Sequence)x);
-            } else if (x.isSequence(Expression.MUL)) {
+                break;
+            case Expression.OP_MUL:
                 e = convertMUL((Sequence)x);
-            } else if (x.isSequence(Expression.DIV)) {
+                break;
+            case Expression.OP_DIV:
                 e = convertDIV((Sequence)x);
-            } else if (x.isSequence(Expression.MOD)) {
+                break;
+            case Expression.OP_MOD:
                 e = convertMOD((Sequence)x);
-            } else if (x.isSequence(Expression.POW)) {
+                break;
+            case Expression.OP_POW:
                 e = convertPOW((Sequence)x);
-            } else if (x.isSequence(Expression.MIN)) {
+                break;
+            case Expression.OP_MIN:
                 e = convertMIN((Sequence)x);
-            } else if (x.isSequence(Expression.MAX)) {
+                break;
+            case Expression.OP_MAX:
                 e = convertMAX((Sequence)x);
-            } else if (x.isSequence(Expression.IF)) {
+                break;
+            case Expression.OP_IF:
                 e = convertIF((Sequence)x);
-            } else {
+                break;
+            default:
                 converter.syntaxError(x);
             }
         }
@@ -468,19 +538,24 @@ public class ComparisonConverter {
     }
     
     private LinearSum simplifyLinearExpression(LinearSum e, String cmp, boolean first) throws SugarException {
+        return simplifyLinearExpression(e, cmp, first, Converter.MAX_LINEARSUM_SIZE, Converter.SPLITS);
+    }
+
+    private LinearSum simplifyLinearExpression(LinearSum e, String cmp, boolean first,
+            long maxSize, int splits) throws SugarException {
         if (Converter.ESTIMATE_SATSIZE) {
             // seems bad in general
-            if (e.satSizeLE(Converter.MAX_LINEARSUM_SIZE)) {
+            if (e.satSizeLE(maxSize)) {
                 return e;
             }
         } else {
-            if (e.size() <= 1 || ! e.isDomainLargerThan(Converter.MAX_LINEARSUM_SIZE)) {
+            if (e.size() <= 1 || ! e.isDomainLargerThan(maxSize)) {
             // if (e.size() <= 1 || ! e.isDomainLargerThanExcept(MAX_LINEARSUM_SIZE)) {
                 return e;
             }
         }
         int b = e.getB();
-        LinearSum[] es = e.split(first ? 3 : Converter.SPLITS);
+        LinearSum[] es = e.split(first ? 3 : splits);
         e = new LinearSum(b);
         for (int i = 0; i < es.length; i++) {
             LinearSum ei = es[i];
@@ -489,7 +564,7 @@ public class ComparisonConverter {
                 ei.divide(factor);
             }
             // Recursive call is not necessary, but it works better
-            ei = simplifyLinearExpression(ei, "eq", false);
+            ei = simplifyLinearExpression(ei, "eq", false, maxSize, splits);
             // System.out.println(es[i] + " ==> " + ei);
             if (ei.size() > 1) {
                 IntegerVariable v = new IntegerVariable(ei.getDomain());
@@ -519,6 +594,40 @@ public class ComparisonConverter {
         return e;
     }
     
+    /*
+     * Splits a large linear expression with the parameters
+     * giving the smallest estimated number of SAT clauses.
+     * The candidates are no splitting, the global parameters,
+     * and the combinations of AUTO_SPLIT_SIZES and AUTO_SPLIT_SPLITS.
+     */
+    private LinearSum autoSplitLinearExpression(LinearSum e, String cmp) throws SugarException {
+        SplitEstimator estimator = new SplitEstimator(e, cmp,
+                Converter.USE_EQ || Converter.EQUIV_TRANSLATION);
+        double best = estimator.estimate();
+        long bestSize = 0;
+        int bestSplits = 0;
+        List<long[]> candidates = new ArrayList<long[]>();
+        candidates.add(new long[] { Converter.MAX_LINEARSUM_SIZE, Converter.SPLITS });
+        for (long maxSize : Converter.AUTO_SPLIT_SIZES) {
+            for (int splits : Converter.AUTO_SPLIT_SPLITS) {
+                candidates.add(new long[] { maxSize, splits });
+            }
+        }
+        for (long[] candidate : candidates) {
+            if (! e.isDomainLargerThan(candidate[0]))
+                continue;
+            double clauses = estimator.estimate(candidate[0], (int)candidate[1]);
+            if (clauses < best) {
+                best = clauses;
+                bestSize = candidate[0];
+                bestSplits = (int)candidate[1];
+            }
+        }
+        if (bestSize == 0)
+            return e;
+        return simplifyLinearExpression(e, cmp, true, bestSize, bestSplits);
+    }
+
     private LinearSum reduceLinearExpression(LinearSum e, String cmp) throws SugarException {
         if (e.size() <= Converter.MAX_ARITY)
             return e;
@@ -562,12 +671,31 @@ public class ComparisonConverter {
     }
 
 
+    /*
+     * Sums of 0-1 variables with coefficients +1/-1 are not split
+     * when OrderEncoder encodes them as cardinality constraints.
+     */
+    private boolean isCardinality(LinearSum e) {
+        if (OrderEncoder.CARDINALITY_ENCODING == null
+                || e.size() < OrderEncoder.CARDINALITY_MIN_SIZE)
+            return false;
+        for (IntegerVariable v : e.getCoef().keySet()) {
+            int a = e.getA(v);
+            if (! v.isBoolean() || (a != 1 && a != -1))
+                return false;
+        }
+        return true;
+    }
+
     private LinearSum reduceArity(LinearSum e, String cmp) throws SugarException {
         LinearSum[] es = e.splitPbPart();
         e = es[0];
-        if (Converter.REDUCE_ARITY) {
+        if (Converter.REDUCE_ARITY && ! isCardinality(e)) {
             if (Converter.MAX_ARITY > 0) {
                 e = reduceLinearExpression(e, cmp);
+            } else if (Converter.AUTO_SPLIT) {
+                if (e.size() > 3)
+                    e = autoSplitLinearExpression(e, cmp);
             } else if (e.size() > 3 && e.isDomainLargerThanExcept(Converter.MAX_LINEARSUM_SIZE)) {
                 e = simplifyLinearExpression(e, cmp, true);
             }
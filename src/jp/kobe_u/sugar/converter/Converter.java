@@ -54,10 +54,21 @@ public class Converter {
     public static boolean DECOMPOSE_COUNT = true;
     public static boolean DECOMPOSE_GLOBAL_CARDINALITY = true;
     public static boolean DECOMPOSE_GLOBAL_CARDINALITY_WITH_COSTS = true;
+    /** Products and powers of variables are encoded by ProductLiteral and PowerLiteral if false */
+    public static boolean DECOMPOSE_PRODUCT = true;
     public static boolean REPLACE_ARGUMENTS = false;
     public static boolean REDUCE_ARITY = true;
     public static int MAX_ARITY = 0;
     public static int SPLITS = 2;
+    /**
+     * Large linear expressions are split with the parameters chosen
+     * for each of them by estimating the number of SAT clauses when true.
+     * The candidates of MAX_LINEARSUM_SIZE and SPLITS are given by
+     * AUTO_SPLIT_SIZES and AUTO_SPLIT_SPLITS.
+     */
+    public static boolean AUTO_SPLIT = false;
+    public static long[] AUTO_SPLIT_SIZES = { 256L, 1024L, 4096L, 16384L };
+    public static int[] AUTO_SPLIT_SPLITS = { 2, 3, 4 };
     public static boolean USE_EQ = false;
     public static boolean EQUIV_TRANSLATION = false;
     public static boolean ESTIMATE_SATSIZE = false; // bad
@@ -250,25 +261,31 @@ public class Converter {
 
     public Expression convertLogical(Sequence seq, boolean negative, List<Clause> clauses) throws SugarException {
         Expression x = null;
-        if (seq.isSequence(Expression.IMP)) {
+        switch (seq.getOpcode()) {
+        case Expression.OP_IMP:
             checkArity(seq, 2);
             x = seq.get(1).not().or(seq.get(2));
-        } else if (seq.isSequence(Expression.XOR)) {
+            break;
+        case Expression.OP_XOR:
             checkArity(seq, 2);
             x = (seq.get(1).or(seq.get(2))).and(seq.get(1).not().or(seq.get(2).not()));
-        } else if (seq.isSequence(Expression.IFF)) {
+            break;
+        case Expression.OP_IFF:
             checkArity(seq, 2);
             x = (seq.get(1).not().or(seq.get(2))).and(seq.get(1).or(seq.get(2).not()));
-        } else if ((seq.isSequence(Expression.AND) && ! negative)
-                || (seq.isSequence(Expression.OR) && negative)) {
-            for (int i = 1; i < seq.length(); i++) {
-                List<Clause> clauses0 = convertConstraint(seq.get(i), negative);
-                clauses.addAll(clauses0);
+            break;
+        case Expression.OP_AND:
+        case Expression.OP_OR:
+            if ((seq.getOpcode() == Expression.OP_AND) != negative) {
+                for (int i = 1; i < seq.length(); i++) {
+                    List<Clause> clauses0 = convertConstraint(seq.get(i), negative);
+                    clauses.addAll(clauses0);
+                }
+            } else {
+                clauses.addAll(convertDisj(seq, negative));
             }
-        } else if ((seq.isSequence(Expression.OR) && ! negative)
-                || (seq.isSequence(Expression.AND) && negative)) {
-            clauses.addAll(convertDisj(seq, negative));
-        } else {
+            break;
+        default:
             syntaxError(seq);
         }
         return x;
@@ -309,37 +326,49 @@ public class Converter {
     */
     
     public Expression convertComparison(Sequence seq, boolean negative, List<Clause> clauses) throws SugarException {
+        int op = seq.getOpcode();
         if (NORMALIZE_LINEARSUM) {
-            if (seq.isSequence(Expression.EQ))
+            if (op == Expression.OP_EQ)
                 return (seq.get(1).le(seq.get(2))).and(seq.get(1).ge(seq.get(2)));
-            if (seq.isSequence(Expression.NE))
+            if (op == Expression.OP_NE)
                 return (seq.get(1).lt(seq.get(2))).or(seq.get(1).gt(seq.get(2)));
         }
-        if ((seq.isSequence(Expression.EQ) && ! negative)
-            || (seq.isSequence(Expression.NE) && negative)) {
+        if (negative) {
+            switch (op) {
+            case Expression.OP_EQ: op = Expression.OP_NE; break;
+            case Expression.OP_NE: op = Expression.OP_EQ; break;
+            case Expression.OP_LE: op = Expression.OP_GT; break;
+            case Expression.OP_LT: op = Expression.OP_GE; break;
+            case Expression.OP_GE: op = Expression.OP_LT; break;
+            case Expression.OP_GT: op = Expression.OP_LE; break;
+            }
+        }
+        switch (op) {
+        case Expression.OP_EQ:
             checkArity(seq, 2);
             clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "eq"));
-        } else if ((seq.isSequence(Expression.NE) && ! negative)
-                || (seq.isSequence(Expression.EQ) && negative)) {
+            break;
+        case Expression.OP_NE:
             checkArity(seq, 2);
             clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "ne"));
-        } else if ((seq.isSequence(Expression.LE) && ! negative)
-                || (seq.isSequence(Expression.GT) && negative)) {
+            break;
+        case Expression.OP_LE:
             checkArity(seq, 2);
             clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "le"));
-        } else if ((seq.isSequence(Expression.LT) && ! negative)
-                || (seq.isSequence(Expression.GE) && negative)) {
+            break;
+        case Expression.OP_LT:
             checkArity(seq, 2);
             clauses.addAll(comparisonConverter.convertComp(seq.get(1).add(1), seq.get(2), "le"));
-        } else if ((seq.isSequence(Expression.GE) && ! negative)
-                || (seq.isSequence(Expression.LT) && negative)) {
+            break;
+        case Expression.OP_GE:
             checkArity(seq, 2);
             clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2), "ge"));
-        } else if ((seq.isSequence(Expression.GT) && ! negative)
-                || (seq.isSequence(Expression.LE) && negative)) {
+            break;
+        case Expression.OP_GT:
             checkArity(seq, 2);
             clauses.addAll(comparisonConverter.convertComp(seq.get(1), seq.get(2).add(1), "ge"));
-        } else {
+            break;
+        default:
             syntaxError(seq);
         }
         return null;
@@ -347,29 +376,41 @@ public class Converter {
     
     public Expression convertGlobal(Sequence seq, boolean negative, List<Clause> clauses) throws SugarException {
         Expression x = null;
-        if (seq.isSequence(Expression.ALLDIFFERENT)) {
+        switch (seq.getOpcode()) {
+        case Expression.OP_ALLDIFFERENT:
             x = globalConverter.convertAllDifferent(seq);
-        } else if (seq.isSequence(Expression.WEIGHTEDSUM)) {
+            break;
+        case Expression.OP_WEIGHTEDSUM:
             x = globalConverter.convertWeightedSum(seq);
-        } else if (seq.isSequence(Expression.CUMULATIVE)) {
+            break;
+        case Expression.OP_CUMULATIVE:
             x = globalConverter.convertCumulative(seq);
-        } else if (seq.isSequence(Expression.ELEMENT)) {
+            break;
+        case Expression.OP_ELEMENT:
             x = globalConverter.convertElement(seq);
-        } else if (seq.isSequence(Expression.DISJUNCTIVE)) {
+            break;
+        case Expression.OP_DISJUNCTIVE:
             x = globalConverter.convertDisjunctive(seq);
-        } else if (seq.isSequence(Expression.LEX_LESS)) {
+            break;
+        case Expression.OP_LEX_LESS:
             x = globalConverter.convertLex_less(seq);
-        } else if (seq.isSequence(Expression.LEX_LESSEQ)) {
+            break;
+        case Expression.OP_LEX_LESSEQ:
             x = globalConverter.convertLex_lesseq(seq);
-        } else if (seq.isSequence(Expression.NVALUE)) {
+            break;
+        case Expression.OP_NVALUE:
             x = globalConverter.convertNvalue(seq);
-        } else if (seq.isSequence(Expression.COUNT)) {
+            break;
+        case Expression.OP_COUNT:
             x = globalConverter.convertCount(seq);
-        } else if (seq.isSequence(Expression.GLOBAL_CARDINALITY)) {
+            break;
+        case Expression.OP_GLOBAL_CARDINALITY:
             x = globalConverter.convertGlobal_cardinality(seq);
-        } else if (seq.isSequence(Expression.GLOBAL_CARDINALITY_WITH_COSTS)) {
+            break;
+        case Expression.OP_GLOBAL_CARDINALITY_WITH_COSTS:
             x = globalConverter.convertGlobal_cardinality_with_costs(seq);
-        } else {
+            break;
+        default:
             syntaxError(seq);
         }
         return x;
@@ -401,7 +442,7 @@ public class Converter {
                         continue;
                     }
                 }
-                if (seq.isSequence(Expression.HOLD)) {
+                if (seq.getOpcode() == Expression.OP_HOLD) {
                     Clause clause = new Clause(new HoldLiteral(seq.get(1), negative));
                     // clauses = new ArrayList<Clause>();
                     clauses.add(clause);
@@ -432,7 +473,7 @@ public class Converter {
                         break;
                     }
                 } else if (Expression.isLogical(seq)) {
-                    if (seq.isSequence(Expression.NOT)) {
+                    if (seq.getOpcode() == Expression.OP_NOT) {
                         checkArity(seq, 1);
                         x = seq.get(1);
                         negative = ! negative;
@@ -453,7 +494,7 @@ public class Converter {
                     x = convertGlobal(seq, negative, clauses);
                     if (x == null)
                         break;
-                } else if (seq.isSequence(Expression.LABEL) && seq.matches("WI")) {
+                } else if (seq.getOpcode() == Expression.OP_LABEL && seq.matches("WI")) {
                     int label = seq.get(1).integerValue();
                     Literal lit = new LabelLiteral(label);
                     clauses.add(new Clause(lit));
@@ -509,25 +550,35 @@ public class Converter {
     public void convertExpression(Expression x) throws SugarException {
         if (SugarMain.debug >= 2)
             System.out.println("Converting " + x);
-        if (x.isSequence(Expression.DOMAIN_DEFINITION)) {
+        switch (x.getOpcode()) {
+        case Expression.OP_DOMAIN_DEFINITION:
             definitionConverter.convertDomainDefinition((Sequence)x);
-        } else if (x.isSequence(Expression.INT_DEFINITION)) {
+            break;
+        case Expression.OP_INT_DEFINITION:
             definitionConverter.convertIntDefinition((Sequence)x, false);
-        } else if (x.isSequence(Expression.DINT_DEFINITION)) {
+            break;
+        case Expression.OP_DINT_DEFINITION:
             definitionConverter.convertIntDefinition((Sequence)x, true);
-        } else if (x.isSequence(Expression.BOOL_DEFINITION)) {
+            break;
+        case Expression.OP_BOOL_DEFINITION:
             definitionConverter.convertBoolDefinition((Sequence)x, false);
-        } else if (x.isSequence(Expression.DBOOL_DEFINITION)) {
+            break;
+        case Expression.OP_DBOOL_DEFINITION:
             definitionConverter.convertBoolDefinition((Sequence)x, true);
-        } else if (x.isSequence(Expression.PREDICATE_DEFINITION)) {
+            break;
+        case Expression.OP_PREDICATE_DEFINITION:
             definitionConverter.convertPredicateDefinition((Sequence)x);
-        } else if (x.isSequence(Expression.RELATION_DEFINITION)) {
+            break;
+        case Expression.OP_RELATION_DEFINITION:
             definitionConverter.convertRelationDefinition((Sequence)x);
-        } else if (x.isSequence(Expression.OBJECTIVE_DEFINITION)) {
+            break;
+        case Expression.OP_OBJECTIVE_DEFINITION:
             definitionConverter.convertObjectiveDefinition((Sequence)x);
-        } else if (x.isSequence(Expression.GROUPS_DEFINITION)) {
+            break;
+        case Expression.OP_GROUPS_DEFINITION:
             definitionConverter.convertGroupsDefinition((Sequence)x);
-        } else {
+            break;
+        default:
             if (HOLD_CONSTRAINTS) {
                 x = convertHold(x);
                 convertConstraint(Expression.create(Expression.HOLD, x));
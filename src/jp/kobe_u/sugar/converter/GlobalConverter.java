@@ -45,7 +45,7 @@ public class GlobalConverter {
             List<Expression> list = new ArrayList<Expression>();
             for (int i = 1; i < seq.length(); i++)
                 list.add(seq.get(i));
-            seq = (Sequence)Expression.alldifferent(new Sequence(list));
+            seq = (Sequence)Expression.alldifferent(Expression.create(list));
         }
         Sequence seq1 = (Sequence)seq.get(1);
         int n = seq1.length();
@@ -0,0 +1,350 @@
+package jp.kobe_u.sugar.converter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.csp.LinearSum;
+
+/**
+ * SplitEstimator estimates the number of SAT clauses of the order encoding
+ * of a linear comparison split by ComparisonConverter with given
+ * MAX_LINEARSUM_SIZE and SPLITS, without introducing any variables.
+ * The domain of a partial sum is approximated by an interval,
+ * and bounds are propagated once for each comparison
+ * since the CSP is propagated before encoding.
+ * Definitions of auxiliary variables are reduced again as the converter does.
+ * @see Converter#AUTO_SPLIT
+ */
+class SplitEstimator {
+    /**
+     * Partial sums are counted only when their range is at most this size.
+     */
+    private static final int MAX_RANGE = 1 << 16;
+
+    private static final int LE = 1;
+
+    private static final int GE = 2;
+
+    private static final int EQ = LE | GE;
+
+    private static final int NE = 0;
+
+    /**
+     * A term a*v where d is { lb, ub, size } of the domain of v
+     * shared with the other terms of v.
+     */
+    private static class Term {
+        long a;
+        long[] d;
+
+        Term(long a, long[] d) {
+            this.a = a;
+            this.d = d;
+        }
+
+        long min() {
+            return Math.min(a * d[0], a * d[1]);
+        }
+
+        long max() {
+            return Math.max(a * d[0], a * d[1]);
+        }
+    }
+
+    private static final Comparator<Term> SORTER = new Comparator<Term>() {
+        // same order as LinearSum.getVariablesSorted
+        public int compare(Term t1, Term t2) {
+            if (t1.d[2] != t2.d[2])
+                return t1.d[2] < t2.d[2] ? -1 : 1;
+            long a1 = Math.abs(t1.a);
+            long a2 = Math.abs(t2.a);
+            return a1 > a2 ? -1 : a1 < a2 ? 1 : 0;
+        }
+    };
+
+    private LinearSum e;
+
+    private int mask;
+
+    private boolean eqDefinitions;
+
+    private long maxSize;
+
+    private int splits;
+
+    /*
+     * Definitions of auxiliary variables to be estimated
+     */
+    private List<List<Term>> defs;
+
+    private List<Integer> defMasks;
+
+    /**
+     * @param eqDefinitions true if auxiliary variables are always defined by equalities
+     */
+    SplitEstimator(LinearSum e, String cmp, boolean eqDefinitions) {
+        this.e = e;
+        mask = cmp.equals("le") ? LE : cmp.equals("ge") ? GE : cmp.equals("eq") ? EQ : NE;
+        this.eqDefinitions = eqDefinitions;
+    }
+
+    private List<Term> getTerms() {
+        List<Term> terms = new ArrayList<Term>();
+        for (IntegerVariable v : e.getCoef().keySet()) {
+            long[] d = { v.getDomain().getLowerBound(), v.getDomain().getUpperBound(), v.getDomain().size() };
+            terms.add(new Term(e.getA(v), d));
+        }
+        return terms;
+    }
+
+    /**
+     * Returns the estimated number of clauses without splitting.
+     */
+    double estimate() {
+        return estimateComparison(getTerms(), e.getB(), mask);
+    }
+
+    /**
+     * Returns the estimated number of clauses when split with the parameters.
+     */
+    double estimate(long maxSize, int splits) {
+        this.maxSize = maxSize;
+        this.splits = splits;
+        defs = new ArrayList<List<Term>>();
+        defMasks = new ArrayList<Integer>();
+        List<Term> result = new ArrayList<Term>();
+        simplify(getTerms(), true, mask, result);
+        double clauses = estimateComparison(result, e.getB(), mask);
+        // definitions are estimated after the bounds of their variables are propagated
+        while (defs.size() > 0) {
+            int i = defs.size() - 1;
+            List<Term> def = defs.remove(i);
+            int defMask = defMasks.remove(i);
+            Term v = def.get(def.size() - 1);
+            clauses += v.d[2];
+            if (def.size() > 3 && isLargerThan(def, maxSize, true)) {
+                List<Term> defResult = new ArrayList<Term>();
+                simplify(def, true, defMask, defResult);
+                def = defResult;
+            }
+            clauses += estimateComparison(def, 0, defMask);
+        }
+        return clauses;
+    }
+
+    /*
+     * Narrows the bounds of the terms of sum(a*v) + b cmp 0.
+     */
+    private static void propagate(List<Term> terms, long b, int mask) {
+        long sumMin = b;
+        long sumMax = b;
+        for (Term t : terms) {
+            sumMin += t.min();
+            sumMax += t.max();
+        }
+        for (Term t : terms) {
+            long lb = t.d[0];
+            long ub = t.d[1];
+            if ((mask & LE) != 0) {
+                long r = t.min() - sumMin;
+                if (t.a > 0)
+                    ub = Math.min(ub, Math.floorDiv(r, t.a));
+                else
+                    lb = Math.max(lb, - Math.floorDiv(r, - t.a));
+            }
+            if ((mask & GE) != 0) {
+                long r = t.max() - sumMax;
+                if (t.a > 0)
+                    lb = Math.max(lb, - Math.floorDiv(- r, t.a));
+                else
+                    ub = Math.min(ub, Math.floorDiv(- r, - t.a));
+            }
+            if (lb <= ub && ub - lb < t.d[1] - t.d[0]) {
+                double ratio = (double)(ub - lb + 1) / (t.d[1] - t.d[0] + 1);
+                t.d[2] = Math.max(1, Math.round(t.d[2] * ratio));
+                t.d[0] = lb;
+                t.d[1] = ub;
+            }
+        }
+    }
+
+    /*
+     * Returns the estimated number of clauses of sum(a*v) + b cmp 0.
+     */
+    private static double estimateComparison(List<Term> terms, long b, int mask) {
+        if (mask == NE)
+            return estimateProduct(terms);
+        propagate(terms, b, mask);
+        double clauses = 0;
+        if ((mask & LE) != 0)
+            clauses += estimateLinearLe(terms, b);
+        if ((mask & GE) != 0) {
+            List<Term> negated = new ArrayList<Term>();
+            for (Term t : terms)
+                negated.add(new Term(- t.a, t.d));
+            clauses += estimateLinearLe(negated, - b);
+        }
+        return clauses;
+    }
+
+    /*
+     * The values of all variables except the largest one are enumerated.
+     */
+    private static double estimateProduct(List<Term> terms) {
+        double clauses = 1;
+        long max = 0;
+        for (Term t : terms) {
+            clauses *= t.d[2];
+            max = Math.max(max, t.d[2]);
+        }
+        return max == 0 ? 0 : clauses / max;
+    }
+
+    /*
+     * Counts the clauses generated by OrderEncoder.encodeLinearLe for
+     * sum(a*v) + b <= 0 by propagating the number of enumerated prefixes
+     * for each partial sum.
+     */
+    private static double estimateLinearLe(List<Term> terms, long b) {
+        int n = terms.size();
+        if (n <= 1)
+            return 1;
+        List<Term> ts = new ArrayList<Term>(terms);
+        Collections.sort(ts, SORTER);
+        long[] restMin = new long[n + 1];
+        for (int i = n - 1; i >= 0; i--)
+            restMin[i] = restMin[i + 1] + ts.get(i).min();
+        long lo = b;
+        long hi = b;
+        for (int i = 0; i < n - 1; i++) {
+            Term t = ts.get(i);
+            // covering all intermediate partial sums
+            lo += Math.min(0, Math.min(t.a * (t.d[0] - 1), t.a * (t.d[1] + 1)));
+            hi += Math.max(0, Math.max(t.a * (t.d[0] - 1), t.a * (t.d[1] + 1)));
+        }
+        if (hi - lo >= MAX_RANGE)
+            return estimateProduct(terms);
+        int range = (int)(hi - lo + 1);
+        double[] count = new double[range];
+        count[(int)(b - lo)] = 1;
+        for (int i = 0; i < n - 1; i++) {
+            Term t = ts.get(i);
+            long a = t.a;
+            long lb = t.d[0];
+            long ub = t.d[1];
+            int stride = (int)Math.abs(a);
+            double density = (double)t.d[2] / (ub - lb + 1);
+            double[] diff = new double[range + stride];
+            for (int j = 0; j < range; j++) {
+                if (count[j] == 0)
+                    continue;
+                long s = lo + j;
+                long lb0 = s + restMin[i + 1];
+                long c0;
+                long c1;
+                if (a > 0) {
+                    // values up to the cut and the one just above it
+                    long cut = Math.floorDiv(- lb0, a);
+                    c0 = Math.min(lb, cut + 1);
+                    c1 = Math.min(ub, cut + 1);
+                } else {
+                    long cut = - Math.floorDiv(- lb0, - a);
+                    c0 = Math.max(lb, cut - 1);
+                    c1 = Math.max(ub, cut - 1);
+                }
+                // a value out of the domain leads to a single clause
+                c0 = Math.max(lb - 1, Math.min(ub + 1, c0));
+                c1 = Math.max(lb - 1, Math.min(ub + 1, c1));
+                double w = c0 < c1 ? count[j] * density : count[j];
+                long t0 = s + a * c0 - lo;
+                long t1 = s + a * c1 - lo;
+                diff[(int)Math.min(t0, t1)] += w;
+                diff[(int)Math.max(t0, t1) + stride] -= w;
+            }
+            for (int j = stride; j < range; j++)
+                diff[j] += diff[j - stride];
+            System.arraycopy(diff, 0, count, 0, range);
+        }
+        long max = ts.get(n - 1).max();
+        double clauses = 0;
+        for (int j = 0; j < range; j++) {
+            if (lo + j + max > 0)
+                clauses += count[j];
+        }
+        return clauses;
+    }
+
+    private static boolean isLargerThan(List<Term> terms, long limit, boolean except) {
+        long max = 0;
+        for (Term t : terms)
+            max = Math.max(max, t.d[2]);
+        double size = 1;
+        for (Term t : terms) {
+            if (except && t.d[2] == max) {
+                except = false;
+                continue;
+            }
+            size *= t.d[2];
+        }
+        return size > limit;
+    }
+
+    private static long gcd(long p, long q) {
+        while (q != 0) {
+            long r = p % q;
+            p = q;
+            q = r;
+        }
+        return p;
+    }
+
+    /*
+     * Simulates ComparisonConverter.simplifyLinearExpression
+     * and records the definitions of auxiliary variables.
+     */
+    private void simplify(List<Term> terms, boolean first, int mask, List<Term> result) {
+        if (terms.size() <= 1 || ! isLargerThan(terms, maxSize, false)) {
+            result.addAll(terms);
+            return;
+        }
+        List<Term> sorted = new ArrayList<Term>(terms);
+        Collections.sort(sorted, SORTER);
+        int m = first ? 3 : splits;
+        // nested partial sums are defined by equalities
+        int defMask = first && ! eqDefinitions && mask != NE ? mask : EQ;
+        for (int i = 0; i < m && i < sorted.size(); i++) {
+            List<Term> group = new ArrayList<Term>();
+            long factor = 0;
+            for (int j = i; j < sorted.size(); j += m)
+                factor = gcd(factor, Math.abs(sorted.get(j).a));
+            for (int j = i; j < sorted.size(); j += m)
+                group.add(new Term(sorted.get(j).a / factor, sorted.get(j).d));
+            List<Term> sub = new ArrayList<Term>();
+            simplify(group, false, EQ, sub);
+            if (sub.size() > 1) {
+                long lb = 0;
+                long ub = 0;
+                double size = 1;
+                for (Term t : sub) {
+                    lb += t.min();
+                    ub += t.max();
+                    size *= t.d[2];
+                }
+                long[] d = { lb, ub, (long)Math.min(ub - lb + 1, size) };
+                // definition of v as sub - v cmp 0
+                List<Term> def = new ArrayList<Term>(sub);
+                def.add(new Term(-1, d));
+                defs.add(def);
+                defMasks.add(defMask);
+                result.add(new Term(factor, d));
+            } else {
+                for (Term t : sub)
+                    result.add(new Term(t.a * factor, t.d));
+            }
+        }
+    }
+
+}
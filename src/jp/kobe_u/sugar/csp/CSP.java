@@ -3,8 +3,12 @@ package jp.kobe_u.sugar.csp;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import jp.kobe_u.sugar.Logger;
 import jp.kobe_u.sugar.SugarException;
@@ -46,6 +50,11 @@ public class CSP {
 
     private int clausesSizeSave = 0;
 
+    /*
+     * Version clock of integer variables at the end of the last propagation
+     */
+    private long propagatedVersion = -1;
+
     /**
      * Objective types.
      */
@@ -77,6 +86,7 @@ public class CSP {
         integerVariableMap = new HashMap<String,IntegerVariable>();
         booleanVariableMap = new HashMap<String,BooleanVariable>();
         relationMap = new HashMap<String,Relation>();
+        IntegerVariable.clearStamps();
     }
     
     public void commit() {
@@ -271,30 +281,109 @@ public class CSP {
         return false;
     }
 
+    /**
+     * Propagates bounds of integer variables until the fixpoint is reached.
+     * Clauses are kept in a FIFO worklist, and a clause is propagated again
+     * only when the domain of one of its variables is narrowed.
+     */
     public int propagate() throws SugarException {
         int removedValues = 0;
         int removedLiterals = 0;
-        while (true) {
-            List<Clause> modifiedClauses = new ArrayList<Clause>();
-            for (Clause clause : clauses) {
-                if (clause.isModified()) {
-                    modifiedClauses.add(clause);
+        int n = clauses.size();
+        List<IntegerVariable> vars = new ArrayList<IntegerVariable>(integerVariables);
+        Map<IntegerVariable,Integer> index = new IdentityHashMap<IntegerVariable,Integer>();
+        for (IntegerVariable v : vars)
+            index.put(v, index.size());
+        for (Clause clause : clauses) {
+            for (Literal lit : clause.getLiterals()) {
+                Set<IntegerVariable> vs = lit.getVariables();
+                if (vs == null)
+                    continue;
+                for (IntegerVariable v : vs) {
+                    if (! index.containsKey(v)) {
+                        index.put(v, index.size());
+                        vars.add(v);
+                    }
+                }
+            }
+        }
+        int m = vars.size();
+        // occurrences of each variable given as lists of clause indices
+        int[][] occurrences = new int[m][];
+        int[] counts = new int[m];
+        int[] last = new int[m];
+        Arrays.fill(last, -1);
+        int[][] clauseVariables = new int[n][];
+        int[] queue = new int[n + 1];
+        int head = 0;
+        int tail = 0;
+        boolean[] queued = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Clause clause = clauses.get(i);
+            for (Literal lit : clause.getLiterals()) {
+                Set<IntegerVariable> vs = lit.getVariables();
+                if (vs == null)
+                    continue;
+                for (IntegerVariable v : vs) {
+                    int x = index.get(v);
+                    if (last[x] == i)
+                        continue;
+                    last[x] = i;
+                    if (occurrences[x] == null)
+                        occurrences[x] = new int[4];
+                    else if (counts[x] == occurrences[x].length)
+                        occurrences[x] = Arrays.copyOf(occurrences[x], 2 * counts[x]);
+                    occurrences[x][counts[x]++] = i;
                 }
-            }       
-            for (IntegerVariable v : integerVariables) {
-                v.setModified(false);
             }
-            int values = 0;
-            int literals = 0;
-            for (Clause clause : modifiedClauses) {
-                values += clause.propagate();
-                literals += clause.removeFalsefood();
+            if (clause.isModifiedSince(propagatedVersion)) {
+                queue[tail++] = i;
+                queued[i] = true;
+            }
+        }
+        int[] sizes = new int[m];
+        for (int x = 0; x < m; x++)
+            sizes[x] = vars.get(x).getDomain().size();
+        while (head != tail) {
+            int i = queue[head];
+            head = head == n ? 0 : head + 1;
+            queued[i] = false;
+            Clause clause = clauses.get(i);
+            int values = clause.propagate();
+            int removed = clause.removeFalsefood();
+            if (removed > 0) {
+                // common variables can increase by removing literals
+                clauseVariables[i] = null;
+                removedLiterals += removed;
             }
-            if (values == 0 && literals == 0)
-                break;
+            if (values == 0)
+                continue;
             removedValues += values;
-            removedLiterals += literals;
+            int[] xs = clauseVariables[i];
+            if (xs == null) {
+                Set<IntegerVariable> vs = clause.getCommonVariables();
+                xs = new int[vs.size()];
+                int k = 0;
+                for (IntegerVariable v : vs)
+                    xs[k++] = index.get(v);
+                clauseVariables[i] = xs;
+            }
+            for (int x : xs) {
+                int size = vars.get(x).getDomain().size();
+                if (size == sizes[x])
+                    continue;
+                sizes[x] = size;
+                for (int k = 0; k < counts[x]; k++) {
+                    int j = occurrences[x][k];
+                    if (! queued[j]) {
+                        queue[tail] = j;
+                        tail = tail == n ? 0 : tail + 1;
+                        queued[j] = true;
+                    }
+                }
+            }
         }
+        propagatedVersion = IntegerVariable.getVersionClock();
         int removedClauses = 0;
         int i = 0;
         while (i < clauses.size()) {
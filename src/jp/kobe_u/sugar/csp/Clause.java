@@ -84,12 +84,19 @@ public class Clause {
         this.comment = comment;
     }
 
-    public boolean isModified() {
+    /**
+     * Returns true when the domain of some variable in the clause
+     * is changed after the given version.
+     * @param version the version
+     * @return true when some domain is changed
+     * @see IntegerVariable#getVersion()
+     */
+    public boolean isModifiedSince(long version) {
         for (Literal lit : literals) {
             Set<IntegerVariable> vs = lit.getVariables();
             if (vs != null) {
                 for (IntegerVariable v : vs) {
-                    if (v.isModified()) {
+                    if (v.getVersion() > version) {
                         return true;
                     }
                 }
@@ -205,6 +212,7 @@ public class Clause {
         while (i < literals.size()) {
             if (literals.get(i).isUnsatisfiable()) {
                 literals.remove(i);
+                commonVariables = null;
                 count++;
             } else {
                 i++;
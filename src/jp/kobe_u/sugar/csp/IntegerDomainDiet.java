@@ -73,9 +73,10 @@ public class IntegerDomainDiet extends IntegerDomain {
     @Override
     public int size() {
         if (size < 0) {
-            size = 0;
+            int s = 0;
             for (int[] r : treeSet)
-                size += r[1] - r[0] + 1;
+                s += r[1] - r[0] + 1;
+            size = s;
         }
         return size;
     }
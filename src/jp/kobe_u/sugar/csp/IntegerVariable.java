@@ -1,6 +1,7 @@
 package jp.kobe_u.sugar.csp;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
@@ -21,14 +22,76 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
     private IntegerDomain domain;
     private boolean aux;
     private String comment = null;
-    private boolean modified = true;
+    private long version;
     private int code;
     private boolean dominant;
     private int value;
     // private int offset;
     // private IntegerVariable[] vs = null;
     private Encoding encoding = Encoding.ORDER;
+    private int base = 0;
+    private DomainIndex index = null;
     
+    public static int MAX_DENSE_INDEX_SIZE = 1 << 16;
+
+    /*
+     * Incremented whenever the domain of some integer variable is changed
+     */
+    private static long versionClock = 0;
+
+    /*
+     * Ring of the variables stamped with the recent versions,
+     * where the variable of version t is at t mod MODIFIED_LOG_SIZE.
+     */
+    private static final int MODIFIED_LOG_SIZE = 1 << 10;
+    private static IntegerVariable[] modifiedLog = new IntegerVariable[MODIFIED_LOG_SIZE];
+
+    /*
+     * Index of a non-contiguous domain for sizeLE.
+     * It is a table of sizeLE(lb + i) when the range is small,
+     * otherwise the sorted array of the domain values.
+     */
+    private static final class DomainIndex {
+        final long version;
+        final int lb;
+        final int[] sizes;
+        final int[] values;
+
+        DomainIndex(IntegerDomain domain, long version) {
+            this.version = version;
+            lb = domain.getLowerBound();
+            int[] values = new int[domain.size()];
+            int n = 0;
+            Iterator<int[]> intervals = domain.intervals();
+            while (intervals.hasNext()) {
+                int[] interval = intervals.next();
+                for (int value = interval[0]; value <= interval[1]; value++)
+                    values[n++] = value;
+            }
+            long range = (long)domain.getUpperBound() - lb + 1;
+            if (range <= MAX_DENSE_INDEX_SIZE) {
+                sizes = new int[(int)range];
+                int k = 0;
+                for (int i = 0; i < sizes.length; i++) {
+                    if (k < n && values[k] == lb + i)
+                        k++;
+                    sizes[i] = k;
+                }
+                this.values = null;
+            } else {
+                sizes = null;
+                this.values = values;
+            }
+        }
+
+        int sizeLE(int value) {
+            if (sizes != null)
+                return sizes[value - lb];
+            int i = Arrays.binarySearch(values, value);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+    }
+
     public IntegerVariable(String name, IntegerDomain domain) throws SugarException {
         this.name = name;
         this.domain = domain;
@@ -36,6 +99,7 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
             throw new SugarException("Integer variable domain error " + name);
         }
         value = domain.getLowerBound();
+        stamp();
         aux = false;
         if (name.startsWith(AUX_NAME_PREFIX)) {
             // Logger.println("c WARNING Auxiliary variable name found : " + name);
@@ -53,6 +117,7 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
             throw new SugarException("Integer variable domain error " + name);
         }
         value = domain.getLowerBound();
+        stamp();
         aux = true;
     }
 
@@ -93,17 +158,49 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
     }
     
     /**
-     * @return the modified
+     * Returns the version of the domain.
+     * It is taken from a global clock when the variable is created
+     * and whenever the domain is narrowed,
+     * so caches built from the domain can tell whether it is changed.
+     * @return the version
      */
-    public boolean isModified() {
-        return modified;
+    public long getVersion() {
+        return version;
     }
 
     /**
-     * @param modified the modified to set
+     * Returns the latest version among the domains of all integer variables.
+     * @return the latest version
      */
-    public void setModified(boolean modified) {
-        this.modified = modified;
+    public static long getVersionClock() {
+        return versionClock;
+    }
+
+    /**
+     * Returns the variable stamped with the given version,
+     * or null if the version is not among the recent ones.
+     * The variable might have been stamped again later.
+     * @param version the version
+     * @return the variable or null
+     */
+    public static IntegerVariable getStampedVariable(long version) {
+        if (version > versionClock || version <= versionClock - MODIFIED_LOG_SIZE)
+            return null;
+        return modifiedLog[(int)version & (MODIFIED_LOG_SIZE - 1)];
+    }
+
+    /*
+     * Forgets the stamped variables so that the ring does not keep
+     * the variables of the previous CSPs alive.
+     * getStampedVariable returns null for the forgotten versions.
+     */
+    static void clearStamps() {
+        Arrays.fill(modifiedLog, null);
+    }
+
+    private void stamp() {
+        version = ++versionClock;
+        modifiedLog[(int)version & (MODIFIED_LOG_SIZE - 1)] = this;
     }
 
     public int bound(int lb, int ub) throws SugarException {
@@ -112,7 +209,7 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
             throw new SugarException("Internal error: " + this + " " + lb + " " + ub);
         domain = domain.bound(lb, ub);
         if (! domain.equals(oldDomain)) {
-            modified = true;
+            stamp();
         }
         return oldDomain.size() - domain.size();
     }
@@ -149,6 +246,48 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
         this.encoding = encoding;
     }
 
+    /**
+     * Returns the base of digits in the compact order encoding.
+     * @return the base
+     */
+    public int getBase() {
+        return base;
+    }
+
+    public void setBase(int base) {
+        this.base = base;
+    }
+
+    /**
+     * Returns the sizes of base-B digits of v-lb
+     * (from the least significant one) in the compact order encoding.
+     * All digits except the most significant one have size B.
+     * @return the sizes of digits
+     */
+    public int[] getDigitSizes() {
+        return getDigitSizes(base);
+    }
+
+    /**
+     * Returns the sizes of base-B digits of v-lb for the given base.
+     * @param base the base of digits
+     * @return the sizes of digits
+     */
+    public int[] getDigitSizes(int base) {
+        long range = (long)domain.getUpperBound() - domain.getLowerBound();
+        int m = 1;
+        long w = 1;
+        while (w * base <= range) {
+            w *= base;
+            m++;
+        }
+        int[] sizes = new int[m];
+        for (int i = 0; i < m - 1; i++)
+            sizes[i] = base;
+        sizes[m - 1] = (int)(range / w) + 1;
+        return sizes;
+    }
+
     public boolean isPbEncoding() {
         return encoding == Encoding.LOG;
     }
@@ -187,11 +326,42 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
         return domain.contains(value);
     }
 
+    /**
+     * Returns the number of domain values less than or equal to the value.
+     * Non-contiguous domains are indexed on the first call,
+     * so that the order encoding code of v&lt;=value is found
+     * in constant or logarithmic time.
+     * @param value the value
+     * @return the number of domain values less than or equal to the value
+     */
+    public int sizeLE(int value) {
+        int lb = domain.getLowerBound();
+        int ub = domain.getUpperBound();
+        if (value < lb)
+            return 0;
+        if (value >= ub)
+            return domain.size();
+        if (domain.size() == ub - lb + 1)
+            return value - lb + 1;
+        DomainIndex index = this.index;
+        if (index == null || index.version != version) {
+            index = new DomainIndex(domain, version);
+            this.index = index;
+        }
+        return index.sizeLE(value);
+    }
+
     public int getSatVariablesSize() {
         /*
         if (vs != null)
             return 0;
         */
+        if (encoding == Encoding.COMPACT_ORDER) {
+            int size = 0;
+            for (int digitSize : getDigitSizes())
+                size += digitSize - 1;
+            return size;
+        }
         return domain.size() - 1;
     }
 
@@ -216,6 +386,10 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
         int lb = domain.getLowerBound();
         int ub = domain.getUpperBound();
         int code = getCode();
+        if (encoding == Encoding.COMPACT_ORDER) {
+            decodeCompact(satValues, base);
+            return;
+        }
         value = ub;
         for (int c = lb; c < ub; c++) {
             if (domain.contains(c)) {
@@ -227,7 +401,30 @@ public class IntegerVariable implements Comparable<IntegerVariable> {
             }
         }
     }
-    
+
+    /**
+     * Decodes the value from the compact order encoding of the given base.
+     * @param satValues the values of SAT variables
+     * @param base the base of digits
+     */
+    public void decodeCompact(BitSet satValues, int base) {
+        int code = getCode();
+        value = domain.getLowerBound();
+        int w = 1;
+        for (int size : getDigitSizes(base)) {
+            int d = size - 1;
+            for (int k = 0; k < size - 1; k++) {
+                if (satValues.get(code + k)) {
+                    d = k;
+                    break;
+                }
+            }
+            value += d * w;
+            code += size - 1;
+            w *= base;
+        }
+    }
+
     public int compareTo(IntegerVariable v) {
         if (this == v)
             return 0;
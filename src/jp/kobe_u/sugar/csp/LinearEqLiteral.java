@@ -33,13 +33,11 @@ public class LinearEqLiteral extends LinearLiteral {
         int ub = ub0;
         int a = linearSum.getA(v);
         if (a > 0) {
-            d = linearSum.getDomainExcept(v).neg();
-            lb = ceilDiv(d.getLowerBound(), a);
-            ub = floorDiv(d.getUpperBound(), a);
+            lb = toInt(ceilDiv(- linearSum.getUpperBoundExcept(v), a));
+            ub = toInt(floorDiv(- linearSum.getLowerBoundExcept(v), a));
         } else if (a < 0) {
-            d = linearSum.getDomainExcept(v);
-            lb = ceilDiv(d.getLowerBound(), -a);
-            ub = floorDiv(d.getUpperBound(), -a);
+            lb = toInt(ceilDiv(linearSum.getLowerBoundExcept(v), -a));
+            ub = toInt(floorDiv(linearSum.getUpperBoundExcept(v), -a));
         }
         if (lb > ub)
             return null;
@@ -80,17 +78,14 @@ public class LinearEqLiteral extends LinearLiteral {
         }
         int removed = 0;
         for (IntegerVariable v : linearSum.getCoef().keySet()) {
-            IntegerDomain d = v.getDomain();
             int a = linearSum.getA(v);
             if (a > 0) {
-                IntegerDomain d1 = linearSum.getDomainExcept(v).neg().div(a);
-                int lb = d1.getLowerBound();
-                int ub = d1.getUpperBound();
+                int lb = toInt(floorDiv(- linearSum.getUpperBoundExcept(v), a));
+                int ub = toInt(floorDiv(- linearSum.getLowerBoundExcept(v), a));
                 removed += v.bound(lb, ub);
             } else if (a < 0) {
-                IntegerDomain d1 = linearSum.getDomainExcept(v).div(- a);
-                int lb = d1.getLowerBound();
-                int ub = d1.getUpperBound();
+                int lb = toInt(floorDiv(linearSum.getLowerBoundExcept(v), - a));
+                int ub = toInt(floorDiv(linearSum.getUpperBoundExcept(v), - a));
                 removed += v.bound(lb, ub);
             }
         }
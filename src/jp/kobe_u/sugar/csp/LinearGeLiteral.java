@@ -35,11 +35,9 @@ public class LinearGeLiteral extends LinearLiteral {
         int ub = ub0;
         int a = linearSum.getA(v);
         if (a > 0) {
-            d = linearSum.getDomainExcept(v).neg();
-            lb = ceilDiv(d.getLowerBound(), a);
+            lb = toInt(ceilDiv(- linearSum.getUpperBoundExcept(v), a));
         } else if (a < 0) {
-            d = linearSum.getDomainExcept(v);
-            ub = floorDiv(d.getUpperBound(), -a);
+            ub = toInt(floorDiv(linearSum.getUpperBoundExcept(v), -a));
         }
         if (lb > ub)
             return null;
@@ -56,6 +54,7 @@ public class LinearGeLiteral extends LinearLiteral {
         Encoding encoding = linearSum.getCoef().firstKey().getEncoding();
         switch (encoding) {
         case ORDER:
+        case COMPACT_ORDER:
             return true;
         default:
             return false;
@@ -64,12 +63,12 @@ public class LinearGeLiteral extends LinearLiteral {
     
     @Override
     public boolean isValid() throws SugarException {
-        return linearSum.getDomain().getLowerBound() >= 0;
+        return linearSum.getLowerBound() >= 0;
     }
     
     @Override
     public boolean isUnsatisfiable() throws SugarException {
-        return linearSum.getDomain().getUpperBound() < 0;
+        return linearSum.getUpperBound() < 0;
     }
     
     @Override
@@ -84,14 +83,12 @@ public class LinearGeLiteral extends LinearLiteral {
             int ub = d.getUpperBound();
             int a = linearSum.getA(v);
             if (a > 0) {
-                IntegerDomain d1 = linearSum.getDomainExcept(v).neg().div(a);
-                lb = d1.getLowerBound();
+                lb = toInt(floorDiv(- linearSum.getUpperBoundExcept(v), a));
                 // ub = d.getUpperBound();
                 removed += v.bound(lb, ub);
             } else if (a < 0) {
-                IntegerDomain d1 = linearSum.getDomainExcept(v).div(- a);
                 // lb = d.getLowerBound();
-                ub = d1.getUpperBound();
+                ub = toInt(floorDiv(linearSum.getUpperBoundExcept(v), - a));
                 removed += v.bound(lb, ub);
             }
         }
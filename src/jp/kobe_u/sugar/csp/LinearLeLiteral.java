@@ -33,23 +33,11 @@ public class LinearLeLiteral extends LinearLiteral {
         int lb = v.getDomain().getLowerBound();
         int ub = v.getDomain().getUpperBound();
         if (a != 0) {
-            IntegerDomain d = linearSum.getDomainExcept(v);
-            d = d.neg();
-            int b = d.getUpperBound();
+            long b = - linearSum.getLowerBoundExcept(v);
             if (a >= 0) {
-                // ub = (int)Math.floor((double)b / a);
-                if (b >= 0) {
-                    ub = b/a;
-                } else {
-                    ub = (b-a+1)/a;
-                }
+                ub = toInt(floorDiv(b, a));
             } else {
-                // lb = (int)Math.ceil((double)b / a);
-                if (b >= 0) {
-                    lb = b/a;
-                } else {
-                    lb = (b+a+1)/a;
-                }
+                lb = toInt(ceilDiv(b, a));
             }
         }
         if (lb > ub)
@@ -71,6 +59,7 @@ public class LinearLeLiteral extends LinearLiteral {
         Encoding encoding = linearSum.getCoef().firstKey().getEncoding();
         switch (encoding) {
         case ORDER:
+        case COMPACT_ORDER:
             return true;
         default:
             return false;
@@ -87,12 +76,12 @@ public class LinearLeLiteral extends LinearLiteral {
     
     @Override
     public boolean isValid() throws SugarException {
-        return linearSum.getDomain().getUpperBound() <= 0;
+        return linearSum.getUpperBound() <= 0;
     }
     
     @Override
     public boolean isUnsatisfiable() throws SugarException {
-        return linearSum.getDomain().getLowerBound() > 0;
+        return linearSum.getLowerBound() > 0;
     }
     
     @Override
@@ -115,27 +104,14 @@ public class LinearLeLiteral extends LinearLiteral {
         }
         int removed = 0;
         for (IntegerVariable v : linearSum.getCoef().keySet()) {
-            IntegerDomain d = linearSum.getDomainExcept(v);
-            d = d.neg();
+            long b = - linearSum.getLowerBoundExcept(v);
             int a = linearSum.getA(v);
             int lb = v.getDomain().getLowerBound();
             int ub = v.getDomain().getUpperBound();
             if (a >= 0) {
-                // ub = (int)Math.floor((double)d.getUpperBound()/a);
-                int b = d.getUpperBound();
-                if (b >= 0) {
-                    ub = b/a;
-                } else {
-                    ub = (b-a+1)/a;
-                }
+                ub = toInt(floorDiv(b, a));
             } else {
-                // lb = (int)Math.ceil((double)d.getUpperBound()/a);
-                int b = d.getUpperBound();
-                if (b >= 0) {
-                    lb = b/a;
-                } else {
-                    lb = (b+a+1)/a;
-                }
+                lb = toInt(ceilDiv(b, a));
             }
             // if (lb > v.getDomain().getLowerBound() || ub < v.getDomain().getUpperBound()) {
             if (lb > ub) {
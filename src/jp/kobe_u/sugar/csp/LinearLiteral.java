@@ -73,6 +73,21 @@ public abstract class LinearLiteral extends Literal {
             return (b - a + 1) / a;
     }
     
+    public long floorDiv(long b, long a) {
+        return a < 0 ? Math.floorDiv(- b, - a) : Math.floorDiv(b, a);
+    }
+
+    public long ceilDiv(long b, long a) {
+        return - floorDiv(- b, a);
+    }
+
+    /**
+     * Returns the int value nearest to the given long value.
+     */
+    protected static int toInt(long x) {
+        return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, x));
+    }
+
     public int ceilDiv(int b, int a) {
         if (a < 0) {
             a = - a;
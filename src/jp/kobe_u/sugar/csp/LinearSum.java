@@ -2,7 +2,9 @@ package jp.kobe_u.sugar.csp;
 
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -28,6 +30,86 @@ public class LinearSum {
     private int b;
     private SortedMap<IntegerVariable,Integer> coef = new TreeMap<IntegerVariable,Integer>();
     private IntegerDomain domain = null;
+    private long domainClock;
+    private volatile Bounds bounds = null;
+
+    /*
+     * Bounds of the terms a*v and their totals (excluding b).
+     * They are updated in place when some domains are changed,
+     * which does not happen while encoders read them in parallel.
+     * Only the terms whose variable versions are changed are updated.
+     * The changed variables are taken from the recently stamped ones
+     * when possible, so that a query after k bound changes costs O(k)
+     * instead of O(n).
+     */
+    private static final class Bounds {
+        long clock;
+        final IntegerVariable[] vs;
+        final int[] as;
+        final long[] versions;
+        final long[] mins;
+        final long[] maxs;
+        Map<IntegerVariable,Integer> index = null;
+        long min = 0;
+        long max = 0;
+
+        Bounds(SortedMap<IntegerVariable,Integer> coef) {
+            int n = coef.size();
+            clock = IntegerVariable.getVersionClock();
+            vs = new IntegerVariable[n];
+            as = new int[n];
+            versions = new long[n];
+            mins = new long[n];
+            maxs = new long[n];
+            int i = 0;
+            for (IntegerVariable v : coef.keySet()) {
+                vs[i] = v;
+                as[i] = coef.get(v);
+                versions[i] = -1;
+                updateTerm(i);
+                i++;
+            }
+        }
+
+        void update() {
+            long now = IntegerVariable.getVersionClock();
+            if (clock == now)
+                return;
+            if (now - clock < vs.length / 2
+                    && IntegerVariable.getStampedVariable(clock + 1) != null) {
+                if (index == null) {
+                    index = new HashMap<IntegerVariable,Integer>();
+                    for (int i = 0; i < vs.length; i++)
+                        index.put(vs[i], i);
+                }
+                for (long t = clock + 1; t <= now; t++) {
+                    Integer i = index.get(IntegerVariable.getStampedVariable(t));
+                    if (i != null)
+                        updateTerm(i);
+                }
+            } else {
+                for (int i = 0; i < vs.length; i++)
+                    updateTerm(i);
+            }
+            clock = now;
+        }
+
+        private void updateTerm(int i) {
+            long version = vs[i].getVersion();
+            if (versions[i] == version)
+                return;
+            versions[i] = version;
+            long a = as[i];
+            long lb = a * vs[i].getDomain().getLowerBound();
+            long ub = a * vs[i].getDomain().getUpperBound();
+            min -= mins[i];
+            max -= maxs[i];
+            mins[i] = Math.min(lb, ub);
+            maxs[i] = Math.max(lb, ub);
+            min += mins[i];
+            max += maxs[i];
+        }
+    }
 
     public LinearSum(int b) {
         coef = new TreeMap<IntegerVariable,Integer>();
@@ -47,6 +129,7 @@ public class LinearSum {
         b = e.b;
         coef = new TreeMap<IntegerVariable,Integer>(e.coef);
         domain = null;
+        bounds = null;
     }
 
     /**
@@ -63,6 +146,7 @@ public class LinearSum {
 
     public void setB(int b) {
         this.b = b;
+        domain = null;
     }
     
     public SortedMap<IntegerVariable,Integer> getCoef() {
@@ -101,6 +185,7 @@ public class LinearSum {
             coef.put(v, a);
         }
         domain = null;
+        bounds = null;
     }
 
     public boolean isDomainLargerThan(long limit) {
@@ -130,9 +215,16 @@ public class LinearSum {
         return isDomainLargerThanExcept(limit, v);
     }
     
-    public boolean isModified() {
+    /**
+     * Returns true when the domain of some variable is changed
+     * after the given version.
+     * @param version the version
+     * @return true when some domain is changed
+     * @see IntegerVariable#getVersion()
+     */
+    public boolean isModifiedSince(long version) {
         for (IntegerVariable v : coef.keySet()) {
-            if (v.isModified())
+            if (v.getVersion() > version)
                 return true;
         }
         return false;
@@ -149,6 +241,7 @@ public class LinearSum {
             setA(a, v);
         }
         domain = null;
+        bounds = null;
     }
 
     /**
@@ -162,6 +255,7 @@ public class LinearSum {
             setA(a, v);
         }
         domain = null;
+        bounds = null;
     }
 
     /**
@@ -180,6 +274,7 @@ public class LinearSum {
             }
         }
         domain = null;
+        bounds = null;
     }
 
     public void divide(int c) {
@@ -189,6 +284,7 @@ public class LinearSum {
             setA(a, v);
         }
         domain = null;
+        bounds = null;
     }
 
     private int gcd(int p, int q) {
@@ -239,16 +335,74 @@ public class LinearSum {
     }
 
     public IntegerDomain getDomain() throws SugarException {
-        if (domain == null || isModified()) {
-            domain = IntegerDomain.create(b, b);
+        IntegerDomain d = domain;
+        long clock = IntegerVariable.getVersionClock();
+        if (d == null || (domainClock != clock && isModifiedSince(domainClock))) {
+            // computed locally since encoders may call this in parallel
+            d = IntegerDomain.create(b, b);
             for (IntegerVariable v : coef.keySet()) {
                 int a = getA(v);
-                domain = domain.add(v.getDomain().mul(a));
+                d = d.add(v.getDomain().mul(a));
             }
+            domain = d;
         }
-        return domain;
+        domainClock = clock;
+        return d;
     }
     
+    private Bounds getBounds() {
+        Bounds bs = bounds;
+        if (bs == null) {
+            bs = new Bounds(coef);
+            bounds = bs;
+        } else {
+            bs.update();
+        }
+        return bs;
+    }
+
+    /**
+     * Returns the lower bound of the linear expression
+     * computed from the bounds of the variable domains.
+     * @return the lower bound
+     */
+    public long getLowerBound() {
+        return b + getBounds().min;
+    }
+
+    /**
+     * Returns the upper bound of the linear expression
+     * computed from the bounds of the variable domains.
+     * @return the upper bound
+     */
+    public long getUpperBound() {
+        return b + getBounds().max;
+    }
+
+    /**
+     * Returns the lower bound of the linear expression except the term of v.
+     * @param v the integer variable
+     * @return the lower bound
+     */
+    public long getLowerBoundExcept(IntegerVariable v) {
+        long a = getA(v);
+        long lb = a * v.getDomain().getLowerBound();
+        long ub = a * v.getDomain().getUpperBound();
+        return getLowerBound() - Math.min(lb, ub);
+    }
+
+    /**
+     * Returns the upper bound of the linear expression except the term of v.
+     * @param v the integer variable
+     * @return the upper bound
+     */
+    public long getUpperBoundExcept(IntegerVariable v) {
+        long a = getA(v);
+        long lb = a * v.getDomain().getLowerBound();
+        long ub = a * v.getDomain().getUpperBound();
+        return getUpperBound() - Math.max(lb, ub);
+    }
+
     public IntegerDomain getDomainExcept(IntegerVariable v) throws SugarException {
         // Re-calculation is needed since variable domains might be modified. 
         IntegerDomain d = IntegerDomain.create(b, b);
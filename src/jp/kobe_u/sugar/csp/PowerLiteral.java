@@ -2,21 +2,116 @@ package jp.kobe_u.sugar.csp;
 
 import java.io.IOException;
 import java.util.Set;
+import java.util.TreeSet;
 
 import jp.kobe_u.sugar.SugarException;
 
 /**
- * NOT IMPLEMENTED YET.
- * This class implements a literal for arithmetic power.
+ * This class implements a literal for arithmetic power v = v1 ^ exponent
+ * where exponent is a constant greater than one.
+ * It is created only when Converter.DECOMPOSE_PRODUCT is false.
  * @see CSP
+ * @see jp.kobe_u.sugar.converter.Converter#DECOMPOSE_PRODUCT
  * @author Naoyuki Tamura (tamura@kobe-u.ac.jp)
  */
 public class PowerLiteral extends Literal {
+    private IntegerVariable v;
+    private IntegerVariable v1;
+    private int exponent;
+
+    public PowerLiteral(IntegerVariable v, IntegerVariable v1, int exponent) {
+        this.v = v;
+        this.v1 = v1;
+        this.exponent = exponent;
+    }
+
+    public IntegerVariable getV() {
+        return v;
+    }
+
+    public IntegerVariable getV1() {
+        return v1;
+    }
+
+    public int getExponent() {
+        return exponent;
+    }
+
+    /**
+     * Returns a ^ exponent, or Long.MAX_VALUE (Long.MIN_VALUE)
+     * when it exceeds the range of int.
+     */
+    public static long power(long a, int exponent) {
+        double d = Math.pow(a, exponent);
+        if (d > Integer.MAX_VALUE)
+            return Long.MAX_VALUE;
+        if (d < Integer.MIN_VALUE)
+            return Long.MIN_VALUE;
+        long p = 1;
+        for (int i = 0; i < exponent; i++)
+            p *= a;
+        return p;
+    }
+
+    /*
+     * Returns the largest r with r^exponent <= z
+     * (r >= 0 and z >= 0 if exponent is even).
+     */
+    private long floorRoot(long z) {
+        long r = Math.round(Math.signum(z) * Math.pow(Math.abs(z), 1.0 / exponent));
+        while (power(r + 1, exponent) <= z)
+            r++;
+        while (power(r, exponent) > z)
+            r--;
+        return r;
+    }
+
+    private int clamp(long a) {
+        return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, a));
+    }
+
+    @Override
+    public int[] getBound(IntegerVariable x) throws SugarException {
+        IntegerDomain d = v1.getDomain();
+        IntegerDomain z = v.getDomain();
+        long lb = d.getLowerBound();
+        long ub = d.getUpperBound();
+        boolean even = exponent % 2 == 0;
+        boolean monotone = lb >= 0 || ! even;
+        int[] bound;
+        if (x == v) {
+            if (monotone) {
+                bound = new int[] { clamp(power(lb, exponent)), clamp(power(ub, exponent)) };
+            } else {
+                long m = Math.max(-lb, ub);
+                long p = ub < 0 ? power(ub, exponent) : 0;
+                bound = new int[] { clamp(p), clamp(power(m, exponent)) };
+            }
+        } else if (even && z.getUpperBound() < 0) {
+            return null;
+        } else {
+            long r = floorRoot(z.getUpperBound());
+            if (monotone) {
+                long z0 = even ? Math.max(0, z.getLowerBound()) : z.getLowerBound();
+                long r0 = floorRoot(z0);
+                if (power(r0, exponent) < z0)
+                    r0++;
+                bound = new int[] { clamp(r0), clamp(r) };
+            } else {
+                bound = new int[] { clamp(-r), clamp(r) };
+            }
+        }
+        if (bound[0] > bound[1])
+            return null;
+        return bound;
+    }
 
     @Override
     public Set<IntegerVariable> getVariables() {
-        // TODO
-        return null;
+        Set<IntegerVariable> set = new TreeSet<IntegerVariable>();
+        set.add(v);
+        set.add(v1);
+        return set;
     }
 
     @Override
@@ -33,17 +128,22 @@ public class PowerLiteral extends Literal {
     public boolean isUnsatisfiable() throws SugarException {
         return false;
     }
-    
+
     @Override
-    public int propagate() {
-        // TODO propagate
-        return 0;
+    public int propagate() throws SugarException {
+        int removed = 0;
+        for (IntegerVariable x : getVariables()) {
+            int[] bound = getBound(x);
+            if (bound != null && Math.max(x.getDomain().getLowerBound(), bound[0])
+                    <= Math.min(x.getDomain().getUpperBound(), bound[1]))
+                removed += x.bound(bound[0], bound[1]);
+        }
+        return removed;
     }
 
     @Override
     public boolean isSatisfied() {
-        // TODO isSatisfied
-        return false;
+        return v.getValue() == power(v1.getValue(), exponent);
     }
 
     @Override
@@ -51,10 +151,41 @@ public class PowerLiteral extends Literal {
         throw new SugarException("Negation of PowerLiteral " + this);
     }
 
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((v == null) ? 0 : v.hashCode());
+        result = prime * result + ((v1 == null) ? 0 : v1.hashCode());
+        result = prime * result + exponent;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        PowerLiteral other = (PowerLiteral) obj;
+        if (v == null) {
+            if (other.v != null)
+                return false;
+        } else if (!v.equals(other.v))
+            return false;
+        if (v1 == null) {
+            if (other.v1 != null)
+                return false;
+        } else if (!v1.equals(other.v1))
+            return false;
+        return exponent == other.exponent;
+    }
+
     @Override
     public String toString() {
-        // TODO toString
-        String s = "(power)";
+        String s = "(eq " + v.getName() + " (pow " + v1.getName() + " " + exponent + "))";
         return s;
     }
 
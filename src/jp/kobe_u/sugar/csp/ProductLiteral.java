@@ -2,13 +2,15 @@ package jp.kobe_u.sugar.csp;
 
 import java.io.IOException;
 import java.util.Set;
+import java.util.TreeSet;
 
 import jp.kobe_u.sugar.SugarException;
 
 /**
- * NOT IMPLEMENTED YET.
- * This class implements a literal for arithmetic power.
+ * This class implements a literal for arithmetic product v = v1 * v2.
+ * It is created only when Converter.DECOMPOSE_PRODUCT is false.
  * @see CSP
+ * @see jp.kobe_u.sugar.converter.Converter#DECOMPOSE_PRODUCT
  * @author Naoyuki Tamura (tamura@kobe-u.ac.jp)
  */
 public class ProductLiteral extends Literal {
@@ -22,10 +24,79 @@ public class ProductLiteral extends Literal {
         this.v2 = v2;
     }
 
+    public IntegerVariable getV() {
+        return v;
+    }
+
+    public IntegerVariable getV1() {
+        return v1;
+    }
+
+    public IntegerVariable getV2() {
+        return v2;
+    }
+
     @Override
     public Set<IntegerVariable> getVariables() {
-        // TODO
-        return null;
+        Set<IntegerVariable> set = new TreeSet<IntegerVariable>();
+        set.add(v);
+        set.add(v1);
+        set.add(v2);
+        return set;
+    }
+
+    /*
+     * Returns the bound of z where z = x*y.
+     */
+    private static int[] mulBound(IntegerDomain x, IntegerDomain y) {
+        long[] ps = {
+            (long)x.getLowerBound() * y.getLowerBound(),
+            (long)x.getLowerBound() * y.getUpperBound(),
+            (long)x.getUpperBound() * y.getLowerBound(),
+            (long)x.getUpperBound() * y.getUpperBound()
+        };
+        long lb = ps[0];
+        long ub = ps[0];
+        for (long p : ps) {
+            lb = Math.min(lb, p);
+            ub = Math.max(ub, p);
+        }
+        return new int[] { (int)Math.max(lb, Integer.MIN_VALUE), (int)Math.min(ub, Integer.MAX_VALUE) };
+    }
+
+    /*
+     * Returns the bound of x where z = x*y and y does not contain 0.
+     */
+    private static int[] divBound(IntegerDomain z, IntegerDomain y) {
+        double[] qs = {
+            (double)z.getLowerBound() / y.getLowerBound(),
+            (double)z.getLowerBound() / y.getUpperBound(),
+            (double)z.getUpperBound() / y.getLowerBound(),
+            (double)z.getUpperBound() / y.getUpperBound()
+        };
+        double lb = qs[0];
+        double ub = qs[0];
+        for (double q : qs) {
+            lb = Math.min(lb, q);
+            ub = Math.max(ub, q);
+        }
+        return new int[] { (int)Math.ceil(lb - 1e-9), (int)Math.floor(ub + 1e-9) };
+    }
+
+    @Override
+    public int[] getBound(IntegerVariable x) throws SugarException {
+        int[] bound = null;
+        if (x == v) {
+            bound = mulBound(v1.getDomain(), v2.getDomain());
+        } else {
+            IntegerVariable y = x == v1 ? v2 : v1;
+            if (y.getDomain().getLowerBound() > 0 || y.getDomain().getUpperBound() < 0) {
+                bound = divBound(v.getDomain(), y.getDomain());
+            }
+        }
+        if (bound == null || bound[0] > bound[1])
+            return null;
+        return bound;
     }
 
     @Override
@@ -39,14 +110,20 @@ public class ProductLiteral extends Literal {
     }
     
     @Override
-    public int propagate() {
-        // TODO propagate
-        return 0;
+    public int propagate() throws SugarException {
+        int removed = 0;
+        for (IntegerVariable x : getVariables()) {
+            int[] bound = getBound(x);
+            if (bound != null && Math.max(x.getDomain().getLowerBound(), bound[0])
+                    <= Math.min(x.getDomain().getUpperBound(), bound[1]))
+                removed += x.bound(bound[0], bound[1]);
+        }
+        return removed;
     }
 
     @Override
     public boolean isSatisfied() {
-        return v.getValue() == v1.getValue() * v2.getValue();
+        return v.getValue() == (long)v1.getValue() * v2.getValue();
     }
 
     @Override
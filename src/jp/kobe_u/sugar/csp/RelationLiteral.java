@@ -269,6 +269,27 @@ public class RelationLiteral extends Literal {
         return bricks;
     }
     
+    /**
+     * Returns the distinct allowed tuples within the current domains,
+     * or null when the relation is given by its conflicts
+     * (allowed tuples are not listed).
+     * @return the allowed tuples or null
+     */
+    public List<int[]> getSupports() {
+        if (negative ^ conflicts)
+            return null;
+        List<int[]> supports = new ArrayList<int[]>();
+        HashSet<Tuple> added = new HashSet<Tuple>();
+        for (int[] tuple : tuples) {
+            boolean inside = true;
+            for (int i = 0; i < vs.length && inside; i++)
+                inside = vs[i].getDomain().contains(tuple[i]);
+            if (inside && added.add(new Tuple(tuple)))
+                supports.add(tuple);
+        }
+        return supports;
+    }
+
     public List<Brick> getConflictBricks() throws SugarException {
         Tuple tuple = new Tuple(new int[vs.length]);
         List<Brick> bricks = combineBricks(0, null, tuple);
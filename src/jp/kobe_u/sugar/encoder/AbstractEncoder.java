@@ -7,7 +7,16 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.StreamTokenizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import jp.kobe_u.sugar.Logger;
 import jp.kobe_u.sugar.SugarConstants;
@@ -18,6 +27,7 @@ import jp.kobe_u.sugar.csp.CSP;
 import jp.kobe_u.sugar.csp.CSP.Objective;
 import jp.kobe_u.sugar.csp.Clause;
 import jp.kobe_u.sugar.csp.IntegerVariable;
+import jp.kobe_u.sugar.csp.Literal;
 
 /**
  * AbstractEncoder.
@@ -25,6 +35,16 @@ import jp.kobe_u.sugar.csp.IntegerVariable;
  * @author Naoyuki Tamura (tamura@kobe-u.ac.jp)
  */
 public abstract class AbstractEncoder {
+    /**
+     * Number of threads encoding CSP clauses (1 for sequential encoding).
+     * @see #newWorker(Problem)
+     */
+    public static int THREADS = 1;
+    /**
+     * Number of CSP clauses encoded by a task in parallel encoding.
+     */
+    public static int CHUNK_SIZE = 256;
+
     public CSP csp;
     public Problem problem;
     
@@ -33,6 +53,43 @@ public abstract class AbstractEncoder {
         this.problem = problem;
     }
 
+    /*
+     * Stores clauses given to addClause as they are.
+     * They are normalized when added to the final problem.
+     */
+    private static class ClauseBuffer extends MemoryProblem {
+        ClauseBuffer() throws SugarException {
+            super();
+        }
+
+        @Override
+        public void addClause(int[] clause) throws SugarException {
+            addNormalizedClause(clause);
+            clausesCount++;
+        }
+
+        void addClausesTo(Problem problem) throws SugarException {
+            for (int i = 0; i < clausesCount; i++)
+                problem.addClause(getClause(i));
+        }
+    }
+
+    /**
+     * Returns an encoder writing to the given problem,
+     * which is used to encode CSP clauses in another thread
+     * after SAT codes are assigned,
+     * or null if parallel encoding is not supported.
+     */
+    protected AbstractEncoder newWorker(Problem problem) {
+        return null;
+    }
+
+    private boolean isParallel() {
+        return THREADS > 1 && csp.getGroups() == 0 && ! Problem.GCNF && ! Problem.GWCNF
+            && ! problem.isCommentEnabled() && ! problem.isCategoryEnabled() && SugarMain.debug == 0
+            && newWorker(problem) != null;
+    }
+
     public int negateCode(int code) {
         if (code == Problem.FALSE_CODE) {
             code = Problem.TRUE_CODE;
@@ -44,6 +101,28 @@ public abstract class AbstractEncoder {
         return code;
     }
 
+    /**
+     * Returns the category of a CSP clause for counting SAT clauses,
+     * which is the class name of its non-simple literal
+     * or "simple" for a simple clause.
+     * @see Problem#beginCategory(String)
+     */
+    protected String getCategory(Clause c) {
+        for (Literal lit : c.getLiterals()) {
+            if (! lit.isSimple())
+                return lit.getClass().getSimpleName();
+        }
+        return "simple";
+    }
+
+    /**
+     * Returns the number of SAT variables of the integer variable
+     * in this encoder.
+     */
+    protected int getSatVariablesSize(IntegerVariable v) {
+        return v.getSatVariablesSize();
+    }
+
     public abstract void encodeIntegerVariable(IntegerVariable v) throws SugarException;
     
     public abstract void encodeClause(Clause c) throws SugarException;
@@ -53,7 +132,7 @@ public abstract class AbstractEncoder {
         int satVariablesCount = 0;
         for (IntegerVariable v : csp.getIntegerVariables()) {
             v.setCode(satVariablesCount + 1);
-            int size = v.getSatVariablesSize();
+            int size = getSatVariablesSize(v);
             satVariablesCount += size;
         }
         for (BooleanVariable v : csp.getBooleanVariables()) {
@@ -61,7 +140,12 @@ public abstract class AbstractEncoder {
             int size = v.getSatVariablesSize();
             satVariablesCount += size;
         }
+        boolean categories = problem.isCategoryEnabled();
+        if (categories)
+            problem.beginCategory("variables");
         problem.addVariables(satVariablesCount - problem.variablesCount);
+        if (categories)
+            problem.beginCategory("domains");
         int count = 0;
         int n = csp.getIntegerVariables().size();
         int percent = 10;
@@ -75,33 +159,41 @@ public abstract class AbstractEncoder {
                 percent += 10;
             }
         }
-        count = 0;
-        n = csp.getClauses().size();
-        percent = 10;
-        for (Clause c : csp.getClauses()) {
-            if (c.isValid())
-                continue;
-            int clausesCount0 = problem.clausesCount;
-            encodeClause(c);
-            count++;
-            if (SugarMain.debug >= 1) {
-                int k = problem.clausesCount - clausesCount0;
-                Logger.fine(k + " SAT clauses for " + c);
-            }
-            if ((100*count)/n >= percent) {
-                Logger.fine(count + " (" + percent + "%) "
-                        + "CSP clauses are encoded"
-                        + " (" + problem.summary() + ")");
-                percent += 10;
+        if (isParallel()) {
+            count = encodeClausesParallel();
+        } else {
+            count = 0;
+            n = csp.getClauses().size();
+            percent = 10;
+            for (Clause c : csp.getClauses()) {
+                if (c.isValid())
+                    continue;
+                int clausesCount0 = problem.clausesCount;
+                if (categories)
+                    problem.beginCategory(getCategory(c));
+                encodeClause(c);
+                count++;
+                if (SugarMain.debug >= 1) {
+                    int k = problem.clausesCount - clausesCount0;
+                    Logger.fine(k + " SAT clauses for " + c);
+                }
+                if ((100*count)/n >= percent) {
+                    Logger.fine(count + " (" + percent + "%) "
+                            + "CSP clauses are encoded"
+                            + " (" + problem.summary() + ")");
+                    percent += 10;
+                }
             }
         }
+        if (categories)
+            problem.beginCategory("pragmas");
         if (true) {
             int code0, code1;
             for (IntegerVariable v : csp.getIntegerVariables()) {
                 if (! v.isDominant())
                     continue;
                 code0 = v.getCode();
-                code1 = code0 + v.getSatVariablesSize() - 1;
+                code1 = code0 + getSatVariablesSize(v) - 1;
                 if (code0 < code1)
                     problem.addPragmaDominant(code0, code1);
             }
@@ -127,11 +219,84 @@ public abstract class AbstractEncoder {
         Logger.fine(count + " CSP clauses encoded");
     }
 
+    /*
+     * Encodes CSP clauses in chunks by worker encoders.
+     * The clauses of each chunk are buffered and then added to
+     * the problem in the original order,
+     * therefore the result is the same as the sequential encoding.
+     */
+    private int encodeClausesParallel() throws SugarException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "encoder");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ArrayDeque<Future<ClauseBuffer>> tasks = new ArrayDeque<Future<ClauseBuffer>>();
+        int count = 0;
+        int n = csp.getClauses().size();
+        int percent = 10;
+        try {
+            List<Clause> chunk = new ArrayList<Clause>();
+            for (Clause c : csp.getClauses()) {
+                // isValid is checked here so that cached domains are computed in this thread
+                if (c.isValid())
+                    continue;
+                chunk.add(c);
+                count++;
+                if (chunk.size() >= CHUNK_SIZE) {
+                    tasks.add(executor.submit(newTask(chunk)));
+                    chunk = new ArrayList<Clause>();
+                    while (tasks.size() > 2 * THREADS)
+                        retire(tasks.poll());
+                }
+                if ((100*count)/n >= percent) {
+                    Logger.fine(count + " (" + percent + "%) "
+                            + "CSP clauses are encoded"
+                            + " (" + problem.summary() + ")");
+                    percent += 10;
+                }
+            }
+            if (! chunk.isEmpty())
+                tasks.add(executor.submit(newTask(chunk)));
+            while (! tasks.isEmpty())
+                retire(tasks.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+        return count;
+    }
+
+    private Callable<ClauseBuffer> newTask(final List<Clause> chunk) {
+        return new Callable<ClauseBuffer>() {
+            public ClauseBuffer call() throws SugarException {
+                ClauseBuffer buffer = new ClauseBuffer();
+                AbstractEncoder worker = newWorker(buffer);
+                for (Clause c : chunk)
+                    worker.encodeClause(c);
+                return buffer;
+            }
+        };
+    }
+
+    private void retire(Future<ClauseBuffer> task) throws SugarException {
+        try {
+            task.get().addClausesTo(problem);
+        } catch (InterruptedException e) {
+            throw new SugarException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SugarException)
+                throw (SugarException)e.getCause();
+            throw new SugarException(e.getMessage(), e);
+        }
+    }
+
     public void encodeDelta() throws IOException, SugarException {
         int satVariablesCount = problem.variablesCount;
         for (IntegerVariable v : csp.getIntegerVariablesDelta()) {
             v.setCode(satVariablesCount + 1);
-            int size = v.getSatVariablesSize();
+            int size = getSatVariablesSize(v);
             satVariablesCount += size;
         }
         for (BooleanVariable v : csp.getBooleanVariablesDelta()) {
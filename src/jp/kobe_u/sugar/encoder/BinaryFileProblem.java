@@ -0,0 +1,265 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import jp.kobe_u.sugar.SugarException;
+
+/**
+ * BinaryFileProblem writes SAT clauses in a compact binary format.
+ * The file starts with a 24 byte header:
+ * <pre>
+ * "SGRB" version format 0 0 variables clauses groups topWeight
+ * </pre>
+ * where format is 0 (cnf), 1 (gcnf), or 2 (gwcnf) and
+ * the last four fields are big-endian 32 bit integers.
+ * Each record starts with an unsigned varint tag.
+ * A positive tag n is a clause of n literals.
+ * In gcnf/gwcnf format, the clause is followed by the number of groups,
+ * the group numbers, and the weight (gwcnf only, omitted for group 0).
+ * Then n literals follow, each written as the zigzag varint of
+ * the difference from the previous literal (the first one from 0).
+ * A tag 0 is a dominant pragma followed by two zigzag varint codes.
+ * Comments are not written.
+ * @see #toDimacs(String, String)
+ */
+public class BinaryFileProblem extends FileProblem {
+    public static final byte[] MAGIC = { 'S', 'G', 'R', 'B' };
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 24;
+
+    private byte[] buffer = new byte[256];
+
+    private int[] groupList = null;
+
+    private int groupWeight = 0;
+
+    public BinaryFileProblem(String satFileName) throws SugarException {
+        super(satFileName);
+    }
+
+    private static int format() {
+        if (GCNF)
+            return 1;
+        if (GWCNF)
+            return 2;
+        return 0;
+    }
+
+    private static void putInt32(byte[] b, int pos, int x) {
+        b[pos] = (byte)(x >>> 24);
+        b[pos + 1] = (byte)(x >>> 16);
+        b[pos + 2] = (byte)(x >>> 8);
+        b[pos + 3] = (byte)x;
+    }
+
+    @Override
+    protected byte[] getHeader() throws SugarException {
+        if (groups > 0 && ! GCNF && ! GWCNF)
+            throw new SugarException("GCNF or GWCNF format should be used");
+        byte[] header = new byte[HEADER_SIZE];
+        for (int i = 0; i < MAGIC.length; i++)
+            header[i] = MAGIC[i];
+        header[4] = (byte)VERSION;
+        header[5] = (byte)format();
+        putInt32(header, 8, variablesCount);
+        putInt32(header, 12, clausesCount);
+        putInt32(header, 16, groups);
+        putInt32(header, 20, topWeight);
+        return header;
+    }
+
+    private static int zigzag(int x) {
+        return (x << 1) ^ (x >> 31);
+    }
+
+    private static int unzigzag(int x) {
+        return (x >>> 1) ^ -(x & 1);
+    }
+
+    private int putVarint(int pos, int x) {
+        while ((x & ~0x7F) != 0) {
+            buffer[pos++] = (byte)((x & 0x7F) | 0x80);
+            x >>>= 7;
+        }
+        buffer[pos++] = (byte)x;
+        return pos;
+    }
+
+    private void ensureBuffer(int size) {
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, 2 * buffer.length)];
+        }
+    }
+
+    @Override
+    public void beginGroups(List<Integer> groups, int weight) {
+        super.beginGroups(groups, weight);
+        if (groups == null || groups.size() == 0) {
+            groupList = null;
+        } else {
+            groupList = new int[groups.size()];
+            for (int i = 0; i < groupList.length; i++)
+                groupList[i] = groups.get(i);
+            groupWeight = weight;
+        }
+    }
+
+    @Override
+    public void endGroups() {
+        super.endGroups();
+        groupList = null;
+    }
+
+    @Override
+    public boolean isCommentEnabled() {
+        return false;
+    }
+
+    @Override
+    public void addComment(String comment) throws SugarException {
+    }
+
+    @Override
+    public void addPragmaDominant(int code0, int code1) throws SugarException {
+        int pos = putVarint(0, 0);
+        pos = putVarint(pos, zigzag(code0));
+        pos = putVarint(pos, zigzag(code1));
+        write(buffer, 0, pos);
+    }
+
+    @Override
+    public void addNormalizedClause(int[] clause) throws SugarException {
+        int n = 5 * (clause.length + 2);
+        if (groupList != null)
+            n += 5 * groupList.length;
+        ensureBuffer(n);
+        int pos = putVarint(0, clause.length);
+        if (GCNF || GWCNF) {
+            if (groupList == null) {
+                pos = putVarint(pos, 0);
+            } else {
+                pos = putVarint(pos, groupList.length);
+                for (int g : groupList)
+                    pos = putVarint(pos, g);
+                if (GWCNF)
+                    pos = putVarint(pos, groupWeight);
+            }
+        }
+        int prev = 0;
+        for (int code : clause) {
+            pos = putVarint(pos, zigzag(code - prev));
+            prev = code;
+        }
+        write(buffer, 0, pos);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int x = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException();
+            x |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return x;
+            shift += 7;
+        }
+    }
+
+    /**
+     * Converts a binary clause file into DIMACS CNF (or GCNF/GWCNF) format.
+     * The result is the same as the one written by FileProblem
+     * (except comments).
+     * @param binFileName the binary clause file name
+     * @param cnfFileName the DIMACS file name
+     * @throws SugarException
+     * @throws IOException
+     */
+    public static void toDimacs(String binFileName, String cnfFileName) throws SugarException, IOException {
+        InputStream in0 = new FileInputStream(binFileName);
+        if (binFileName.endsWith(".gz"))
+            in0 = new GZIPInputStream(in0, 64*1024);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(in0, 1024*1024));
+        byte[] header = new byte[HEADER_SIZE];
+        in.readFully(header);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i])
+                throw new SugarException("Not a binary clause file " + binFileName);
+        }
+        if (header[4] != VERSION)
+            throw new SugarException("Unknown binary clause file version " + header[4]);
+        boolean gcnf0 = GCNF;
+        boolean gwcnf0 = GWCNF;
+        GCNF = header[5] == 1;
+        GWCNF = header[5] == 2;
+        try {
+            DataInputStream h = new DataInputStream(new ByteArrayInputStream(header, 8, 16));
+            int variables = h.readInt();
+            int clauses = h.readInt();
+            int groups = h.readInt();
+            int topWeight = h.readInt();
+            FileProblem problem = new FileProblem(cnfFileName);
+            if (groups > 0)
+                problem.setGroups(groups, topWeight);
+            problem.addVariables(variables);
+            int[] clause = null;
+            List<Integer> groupList = new ArrayList<Integer>();
+            int count = 0;
+            while (true) {
+                int n;
+                try {
+                    n = readVarint(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (n == 0) {
+                    int code0 = unzigzag(readVarint(in));
+                    int code1 = unzigzag(readVarint(in));
+                    problem.addPragmaDominant(code0, code1);
+                    continue;
+                }
+                if (GCNF || GWCNF) {
+                    groupList.clear();
+                    int k = readVarint(in);
+                    for (int i = 0; i < k; i++)
+                        groupList.add(readVarint(in));
+                    int weight = k > 0 && GWCNF ? readVarint(in) : 0;
+                    problem.beginGroups(groupList, weight);
+                }
+                if (clause == null || clause.length != n)
+                    clause = new int[n];
+                int prev = 0;
+                for (int i = 0; i < n; i++) {
+                    prev += unzigzag(readVarint(in));
+                    clause[i] = prev;
+                }
+                problem.addNormalizedClause(clause);
+                problem.clausesCount++;
+                if (GCNF || GWCNF)
+                    problem.endGroups();
+                count++;
+            }
+            if (count != clauses)
+                throw new SugarException("Clause count mismatch in " + binFileName
+                        + " (" + count + " read, " + clauses + " expected)");
+            problem.done();
+        } finally {
+            in.close();
+            GCNF = gcnf0;
+            GWCNF = gwcnf0;
+        }
+    }
+
+}
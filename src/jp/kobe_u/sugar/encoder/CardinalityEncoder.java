@@ -0,0 +1,314 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.kobe_u.sugar.SugarException;
+
+/**
+ * CardinalityEncoder encodes a cardinality constraint
+ * x1+...+xn &lt;= k where xi are SAT literals.
+ * Auxiliary variables only have implications from inputs to outputs,
+ * and the constraint is given as clauses of the other literals of
+ * the clause and negations of some outputs.
+ * @see OrderEncoder#CARDINALITY_ENCODING
+ */
+public class CardinalityEncoder {
+    public static enum Encoding {
+        TOTALIZER,
+        MODULO_TOTALIZER,
+        SEQUENTIAL_COUNTER,
+        SORTING_NETWORK
+    }
+
+    private Problem problem;
+
+    private Encoding encoding;
+
+    private int auxCount = 0;
+
+    public CardinalityEncoder(Problem problem, Encoding encoding) {
+        this.problem = problem;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Returns the number of SAT variables introduced.
+     */
+    public int getAuxCount() {
+        return auxCount;
+    }
+
+    private int newVariable() throws SugarException {
+        problem.addVariables(1);
+        auxCount++;
+        return problem.variablesCount;
+    }
+
+    private void addClause(int... clause) throws SugarException {
+        problem.addClause(clause);
+    }
+
+    private void addClause(int[] clause0, int... lits) throws SugarException {
+        int[] clause = new int[clause0.length + lits.length];
+        System.arraycopy(clause0, 0, clause, 0, clause0.length);
+        System.arraycopy(lits, 0, clause, clause0.length, lits.length);
+        problem.addClause(clause);
+    }
+
+    /**
+     * Adds clauses of clause0 | x1+...+xn &lt;= k.
+     * @param xs the literals (neither TRUE_CODE nor FALSE_CODE)
+     * @param k the upper bound
+     * @param clause0 the other literals of the clause
+     */
+    public void encode(int[] xs, int k, int[] clause0) throws SugarException {
+        int n = xs.length;
+        if (k >= n)
+            return;
+        if (k < 0) {
+            problem.addClause(clause0);
+            return;
+        }
+        if (k == 0) {
+            for (int x : xs)
+                addClause(clause0, -x);
+            return;
+        }
+        switch (encoding) {
+        case TOTALIZER: {
+            int[] ys = totalizer(xs, 0, n, k + 1);
+            addClause(clause0, -ys[k]);
+            break;
+        }
+        case MODULO_TOTALIZER:
+            moduloTotalizer(xs, k, clause0);
+            break;
+        case SEQUENTIAL_COUNTER:
+            sequentialCounter(xs, k, clause0);
+            break;
+        case SORTING_NETWORK: {
+            List<Integer> ys = new ArrayList<Integer>();
+            for (int x : xs)
+                ys.add(x);
+            int m = 1;
+            while (m < n)
+                m *= 2;
+            while (ys.size() < m)
+                ys.add(Problem.FALSE_CODE);
+            ys = sort(ys);
+            addClause(clause0, negate(ys.get(k)));
+            break;
+        }
+        default:
+            throw new SugarException("Unsupported cardinality encoding " + encoding);
+        }
+    }
+
+    private static int negate(int code) {
+        if (code == Problem.FALSE_CODE)
+            return Problem.TRUE_CODE;
+        if (code == Problem.TRUE_CODE)
+            return Problem.FALSE_CODE;
+        return -code;
+    }
+
+    /*
+     * Returns outputs y1..ym (m = min(size, max)) of the totalizer
+     * of xs[from..to) where yj is implied by at least j true inputs
+     * (ym by at least m).
+     */
+    private int[] totalizer(int[] xs, int from, int to, int max) throws SugarException {
+        if (to - from == 1)
+            return new int[] { xs[from] };
+        int mid = (from + to) / 2;
+        int[] as = totalizer(xs, from, mid, max);
+        int[] bs = totalizer(xs, mid, to, max);
+        int m = Math.min(to - from, max);
+        int[] ys = new int[m];
+        for (int i = 0; i < m; i++)
+            ys[i] = newVariable();
+        for (int i = 0; i <= as.length; i++) {
+            for (int j = 0; j <= bs.length; j++) {
+                if (i + j == 0)
+                    continue;
+                int y = ys[Math.min(i + j, m) - 1];
+                if (i == 0)
+                    addClause(-bs[j - 1], y);
+                else if (j == 0)
+                    addClause(-as[i - 1], y);
+                else
+                    addClause(-as[i - 1], -bs[j - 1], y);
+            }
+        }
+        return ys;
+    }
+
+    /*
+     * Modulo totalizer: the count c is represented as p*q + r (0 <= r < p)
+     * by unary digits r1..r(p-1) and q1..qmax.
+     * A node has an aux variable carry implied by ra + rb >= p.
+     */
+    private int modulo;
+
+    private int maxQuotient;
+
+    private int[][] moduloTotalizer(int[] xs, int from, int to) throws SugarException {
+        int p = modulo;
+        if (to - from == 1) {
+            // a leaf has no upper digits since p >= 2
+            return new int[][] { { xs[from] }, {} };
+        }
+        int mid = (from + to) / 2;
+        int[][] a = moduloTotalizer(xs, from, mid);
+        int[][] b = moduloTotalizer(xs, mid, to);
+        int n = to - from;
+        int[] rs = new int[Math.min(n, p - 1)];
+        for (int i = 0; i < rs.length; i++)
+            rs[i] = newVariable();
+        // the quotient can exceed n/p when the carry is set without need
+        int q = a[1].length + b[1].length;
+        int carry = Problem.FALSE_CODE;
+        if (a[0].length + b[0].length >= p) {
+            carry = newVariable();
+            q++;
+        }
+        int[] qs = new int[Math.min(q, maxQuotient)];
+        for (int i = 0; i < qs.length; i++)
+            qs[i] = newVariable();
+        // lower digits
+        for (int i = 0; i <= a[0].length; i++) {
+            for (int j = 0; j <= b[0].length; j++) {
+                if (i + j == 0)
+                    continue;
+                int la = i == 0 ? Problem.FALSE_CODE : -a[0][i - 1];
+                int lb = j == 0 ? Problem.FALSE_CODE : -b[0][j - 1];
+                if (i + j < p) {
+                    addClause(la, lb, carry, rs[i + j - 1]);
+                } else {
+                    addClause(la, lb, carry);
+                    if (i + j > p)
+                        addClause(la, lb, rs[i + j - p - 1]);
+                }
+            }
+        }
+        // upper digits
+        for (int i = 0; i <= a[1].length; i++) {
+            for (int j = 0; j <= b[1].length; j++) {
+                int la = i == 0 ? Problem.FALSE_CODE : -a[1][i - 1];
+                int lb = j == 0 ? Problem.FALSE_CODE : -b[1][j - 1];
+                if (i + j > 0 && qs.length > 0)
+                    addClause(la, lb, qs[Math.min(i + j, qs.length) - 1]);
+                if (carry != Problem.FALSE_CODE)
+                    addClause(la, lb, -carry, qs[Math.min(i + j + 1, qs.length) - 1]);
+            }
+        }
+        return new int[][] { rs, qs };
+    }
+
+    private void moduloTotalizer(int[] xs, int k, int[] clause0) throws SugarException {
+        int p = Math.max(2, (int)Math.ceil(Math.sqrt(k + 1)));
+        modulo = p;
+        int kq = k / p;
+        int kr = k % p;
+        maxQuotient = kq + 1;
+        int[][] root = moduloTotalizer(xs, 0, xs.length);
+        int[] rs = root[0];
+        int[] qs = root[1];
+        // forbid p*q + r >= k + 1
+        if (kq + 1 <= qs.length)
+            addClause(clause0, -qs[kq]);
+        if (kr + 1 <= rs.length) {
+            if (kq == 0)
+                addClause(clause0, -rs[kr]);
+            else if (kq <= qs.length)
+                addClause(clause0, -qs[kq - 1], -rs[kr]);
+        }
+    }
+
+    /*
+     * Sequential counter: s[i][j] is implied by at least j+1 true
+     * inputs among x1..x(i+1).
+     */
+    private void sequentialCounter(int[] xs, int k, int[] clause0) throws SugarException {
+        int n = xs.length;
+        int[] s = new int[k];
+        for (int i = 0; i < n - 1; i++) {
+            int[] s1 = new int[k];
+            for (int j = 0; j < k; j++)
+                s1[j] = i == 0 && j > 0 ? Problem.FALSE_CODE : newVariable();
+            addClause(-xs[i], s1[0]);
+            for (int j = 0; j < k; j++) {
+                if (i > 0) {
+                    if (s[j] != Problem.FALSE_CODE && s1[j] != Problem.FALSE_CODE)
+                        addClause(-s[j], s1[j]);
+                    if (j > 0 && s[j - 1] != Problem.FALSE_CODE)
+                        addClause(-xs[i], -s[j - 1], s1[j]);
+                }
+            }
+            if (i > 0 && s[k - 1] != Problem.FALSE_CODE)
+                addClause(clause0, -xs[i], -s[k - 1]);
+            s = s1;
+        }
+        if (s[k - 1] != Problem.FALSE_CODE)
+            addClause(clause0, -xs[n - 1], -s[k - 1]);
+    }
+
+    /*
+     * Comparator of the sorting network (outputs in descending order).
+     */
+    private int[] compare(int a, int b) throws SugarException {
+        if (a == Problem.FALSE_CODE)
+            return new int[] { b, a };
+        if (b == Problem.FALSE_CODE)
+            return new int[] { a, b };
+        int c = newVariable();
+        int d = newVariable();
+        addClause(-a, c);
+        addClause(-b, c);
+        addClause(-a, -b, d);
+        return new int[] { c, d };
+    }
+
+    /*
+     * Batcher's odd-even merge sort of a list of size 2^m.
+     */
+    private List<Integer> sort(List<Integer> xs) throws SugarException {
+        int n = xs.size();
+        if (n == 1)
+            return xs;
+        List<Integer> as = sort(xs.subList(0, n / 2));
+        List<Integer> bs = sort(xs.subList(n / 2, n));
+        return merge(as, bs);
+    }
+
+    private List<Integer> merge(List<Integer> as, List<Integer> bs) throws SugarException {
+        int n = as.size();
+        List<Integer> ys = new ArrayList<Integer>();
+        if (n == 1) {
+            int[] c = compare(as.get(0), bs.get(0));
+            ys.add(c[0]);
+            ys.add(c[1]);
+            return ys;
+        }
+        List<Integer> aOdd = new ArrayList<Integer>();
+        List<Integer> aEven = new ArrayList<Integer>();
+        List<Integer> bOdd = new ArrayList<Integer>();
+        List<Integer> bEven = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            (i % 2 == 0 ? aOdd : aEven).add(as.get(i));
+            (i % 2 == 0 ? bOdd : bEven).add(bs.get(i));
+        }
+        List<Integer> vs = merge(aOdd, bOdd);
+        List<Integer> ws = merge(aEven, bEven);
+        ys.add(vs.get(0));
+        for (int i = 0; i < n - 1; i++) {
+            int[] c = compare(vs.get(i + 1), ws.get(i));
+            ys.add(c[0]);
+            ys.add(c[1]);
+        }
+        ys.add(ws.get(n - 1));
+        return ys;
+    }
+
+}
@@ -0,0 +1,124 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * ClauseStats collects statistics of clauses given to Problem.addClause.
+ * It is enabled by setting Problem.stats.
+ * Statistics are not restored by Problem.cancel().
+ * @see Problem#stats
+ */
+public class ClauseStats {
+    /** Numbers of written clauses indexed by their lengths */
+    private long[] lengths = new long[16];
+
+    private int maxLength = 0;
+
+    public long clauses = 0;
+
+    public long literals = 0;
+
+    /** Number of bytes written for clauses (excluding comments and the header) */
+    public long clauseBytes = 0;
+
+    /** Number of clauses dropped since they contain TRUE_CODE */
+    public long tautologies = 0;
+
+    /** Number of FALSE_CODE literals removed from clauses */
+    public long falseLiterals = 0;
+
+    /** Number of clauses consisting of FALSE_CODE only */
+    public long emptyClauses = 0;
+
+    public void addTautology() {
+        tautologies++;
+    }
+
+    public void addFalseLiterals(int n) {
+        falseLiterals += n;
+    }
+
+    public void addEmptyClause() {
+        emptyClauses++;
+    }
+
+    public void addClause(int length, long bytes) {
+        if (length >= lengths.length) {
+            long[] lengths1 = new long[Math.max(length + 1, 2 * lengths.length)];
+            System.arraycopy(lengths, 0, lengths1, 0, lengths.length);
+            lengths = lengths1;
+        }
+        lengths[length]++;
+        if (length > maxLength)
+            maxLength = length;
+        clauses++;
+        literals += length;
+        clauseBytes += bytes;
+    }
+
+    public long getCount(int length) {
+        return length < lengths.length ? lengths[length] : 0;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public long getLongCount() {
+        return clauses - getCount(1) - getCount(2) - getCount(3);
+    }
+
+    public double getBytesPerClause() {
+        return clauses == 0 ? 0.0 : (double)clauseBytes / clauses;
+    }
+
+    public String summary() {
+        return
+        getCount(1) + " unit, " +
+        getCount(2) + " binary, " +
+        getCount(3) + " ternary, " +
+        getLongCount() + " long clauses, " +
+        tautologies + " tautologies, " +
+        falseLiterals + " false literals";
+    }
+
+    /**
+     * Writes the statistics with the totals of the problem in JSON.
+     */
+    public void output(String fileName, Problem problem) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(fileName), "UTF-8"));
+        out.println("{");
+        out.println("  \"variables\": " + problem.variablesCount + ",");
+        out.println("  \"clauses\": " + problem.clausesCount + ",");
+        out.println("  \"bytes\": " + problem.fileSize + ",");
+        out.println("  \"duplicates\": " + problem.duplicatesCount + ",");
+        out.println("  \"literals\": " + literals + ",");
+        out.println("  \"unitClauses\": " + getCount(1) + ",");
+        out.println("  \"binaryClauses\": " + getCount(2) + ",");
+        out.println("  \"ternaryClauses\": " + getCount(3) + ",");
+        out.println("  \"longClauses\": " + getLongCount() + ",");
+        out.println("  \"maxLength\": " + maxLength + ",");
+        out.println("  \"tautologies\": " + tautologies + ",");
+        out.println("  \"falseLiterals\": " + falseLiterals + ",");
+        out.println("  \"emptyClauses\": " + emptyClauses + ",");
+        out.println("  \"clauseBytes\": " + clauseBytes + ",");
+        out.println("  \"bytesPerClause\": " + String.format(Locale.ROOT, "%.3f", getBytesPerClause()) + ",");
+        out.print("  \"lengths\": {");
+        String delim = "";
+        for (int len = 0; len <= maxLength; len++) {
+            if (lengths[len] == 0)
+                continue;
+            out.print(delim + "\"" + len + "\": " + lengths[len]);
+            delim = ", ";
+        }
+        out.println("}");
+        out.println("}");
+        out.close();
+    }
+
+}
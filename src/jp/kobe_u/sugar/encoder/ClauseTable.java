@@ -0,0 +1,159 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.util.Arrays;
+
+/**
+ * ClauseTable is a bounded open addressing hash set of clauses
+ * used to drop duplicate clauses.
+ * Each slot holds a 64 bit fingerprint, which does not depend on
+ * the order of literals, and the offset of the sorted literals
+ * in a literal arena.
+ * A clause is a duplicate only when its sorted literals are equal
+ * to those of a stored clause with the same fingerprint.
+ * When the table becomes 3/4 full, no more clauses are added
+ * (they are simply not checked for duplicates).
+ * Insertions after the last commit() can be undone by cancel().
+ * @see Problem#DEDUP
+ */
+public class ClauseTable {
+    private static final int MAX_ARENA_SIZE = Integer.MAX_VALUE - 8;
+
+    private long[] table;
+
+    private int[] refs;
+
+    private int mask;
+
+    private int size = 0;
+
+    private int maxSize;
+
+    private int[] journal = new int[256];
+
+    private int journalSize = 0;
+
+    /*
+     * arena[ref] is the number of literals of the clause stored at ref,
+     * and its sorted literals follow.
+     */
+    private int[] arena = new int[1024];
+
+    private int arenaSize = 0;
+
+    private int arenaSizeSave = 0;
+
+    public ClauseTable(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        table = new long[n];
+        refs = new int[n];
+        mask = n - 1;
+        maxSize = n / 4 * 3;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /*
+     * The sum of hashed literals does not depend on their order,
+     * so that clauses need not be sorted.
+     */
+    private static long fingerprint(int[] clause) {
+        long h = 0;
+        for (int code : clause)
+            h += mix(code * 0x9e3779b97f4a7c15L);
+        h = mix(h ^ clause.length);
+        return h == 0 ? 1 : h;
+    }
+
+    /*
+     * Copies the sorted literals of the clause to the end of the arena
+     * without storing it.
+     * Returns false if the arena can not hold them.
+     */
+    private boolean reserve(int[] clause) {
+        int n = arenaSize + clause.length + 1;
+        if (n < 0 || n > MAX_ARENA_SIZE)
+            return false;
+        if (n > arena.length) {
+            int m = arena.length;
+            while (m < n)
+                m = m < (1 << 29) ? 2 * m : MAX_ARENA_SIZE;
+            arena = Arrays.copyOf(arena, m);
+        }
+        arena[arenaSize] = clause.length;
+        System.arraycopy(clause, 0, arena, arenaSize + 1, clause.length);
+        Arrays.sort(arena, arenaSize + 1, n);
+        return true;
+    }
+
+    private boolean equalsReserved(int ref) {
+        int n = arena[arenaSize];
+        if (arena[ref] != n)
+            return false;
+        for (int k = 1; k <= n; k++) {
+            if (arena[ref + k] != arena[arenaSize + k])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the clause to the table.
+     * Returns false if the same clause (as a multiset of literals)
+     * has already been added.
+     */
+    public boolean add(int[] clause) {
+        if (! reserve(clause))
+            return true;
+        long h = fingerprint(clause);
+        int i = (int)h & mask;
+        while (table[i] != 0) {
+            if (table[i] == h && equalsReserved(refs[i]))
+                return false;
+            i = (i + 1) & mask;
+        }
+        if (size < maxSize) {
+            table[i] = h;
+            refs[i] = arenaSize;
+            arenaSize += clause.length + 1;
+            size++;
+            if (journalSize == journal.length)
+                journal = Arrays.copyOf(journal, 2 * journal.length);
+            journal[journalSize++] = i;
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void commit() {
+        journalSize = 0;
+        arenaSizeSave = arenaSize;
+    }
+
+    public void cancel() {
+        // undo in the reverse order so that probe sequences stay valid
+        while (journalSize > 0) {
+            table[journal[--journalSize]] = 0;
+            size--;
+        }
+        arenaSize = arenaSizeSave;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        journalSize = 0;
+        arenaSize = 0;
+        arenaSizeSave = 0;
+    }
+
+}
@@ -0,0 +1,142 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.csp.Clause;
+import jp.kobe_u.sugar.csp.IntegerDomain;
+import jp.kobe_u.sugar.csp.IntegerVariable;
+
+/**
+ * CompactOrderVariable is the compact order encoding of an integer variable
+ * used by OrderEncoder.
+ * v-lb is represented by base-B digits d0 (the least significant one),
+ * ..., d(m-1), and each digit is order encoded.
+ * The literal of v &lt;= c is a new SAT variable L(m-1,c-lb) defined digit-wise by
+ * <pre>
+ * L(i,c) &lt;--&gt; (di &lt;= ci-1) | ((di &lt;= ci) &amp; L(i-1,c mod B^i))
+ * </pre>
+ * where ci is the i-th digit of c and L(-1,c) is true.
+ * L(i,c) depends only on the lower i+1 digits of c,
+ * so that comparisons with close values share most of their literals.
+ * @see IntegerVariable#getDigitSizes(int)
+ */
+class CompactOrderVariable {
+    private OrderEncoder encoder;
+
+    private IntegerVariable v;
+
+    private int base;
+
+    private IntegerVariable[] digits;
+
+    private int[] weights;
+
+    private List<Map<Long,Integer>> codes;
+
+    CompactOrderVariable(OrderEncoder encoder, IntegerVariable v, int base) throws SugarException {
+        this.encoder = encoder;
+        this.v = v;
+        this.base = base;
+        int[] sizes = v.getDigitSizes(base);
+        int m = sizes.length;
+        digits = new IntegerVariable[m];
+        weights = new int[m];
+        codes = new ArrayList<Map<Long,Integer>>(m);
+        int code = v.getCode();
+        int w = 1;
+        for (int i = 0; i < m; i++) {
+            digits[i] = new IntegerVariable("#" + v.getName() + "." + i,
+                    IntegerDomain.create(0, sizes[i] - 1));
+            digits[i].setCode(code);
+            code += sizes[i] - 1;
+            weights[i] = w;
+            w *= base;
+            codes.add(new HashMap<Long,Integer>());
+        }
+    }
+
+    IntegerVariable getVariable() {
+        return v;
+    }
+
+    IntegerVariable[] getDigits() {
+        return digits;
+    }
+
+    int getWeight(int i) {
+        return weights[i];
+    }
+
+    /**
+     * Adds axioms of digits, the upper bound and the holes of the domain.
+     */
+    void encode() throws SugarException {
+        for (IntegerVariable d : digits)
+            encoder.encodeIntegerVariable(d);
+        IntegerDomain domain = v.getDomain();
+        long range = (long)domain.getUpperBound() - domain.getLowerBound();
+        long max = 0;
+        for (int i = 0; i < digits.length; i++)
+            max += (long)weights[i] * digits[i].getDomain().getUpperBound();
+        if (max > range) {
+            // v-lb <= range : di <= ri | d(i+1) <= r(i+1)-1 | ... | d(m-1) <= r(m-1)-1
+            int m = digits.length;
+            int[] clause = new int[m];
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < m; j++) {
+                    int r = (int)(range / weights[j] % base);
+                    if (j < i)
+                        clause[j] = Problem.FALSE_CODE;
+                    else if (j == i)
+                        clause[j] = encoder.getCodeLE(digits[j], r);
+                    else
+                        clause[j] = encoder.getCodeLE(digits[j], r - 1);
+                }
+                encoder.problem.addClause(clause);
+            }
+        }
+        for (Clause clause : v.getDomainClauses())
+            encoder.encodeClause(clause);
+    }
+
+    /**
+     * Returns the code of v &lt;= value where lb &lt;= value &lt; ub.
+     */
+    int getCodeLE(int value) throws SugarException {
+        long c = (long)value - v.getDomain().getLowerBound();
+        return getCodeLE(digits.length - 1, c);
+    }
+
+    private int getCodeLE(int i, long c) throws SugarException {
+        Integer code0 = codes.get(i).get(c);
+        if (code0 != null)
+            return code0;
+        int e = (int)(c / weights[i]);
+        int low = i == 0 ? Problem.TRUE_CODE : getCodeLE(i - 1, c % weights[i]);
+        int a = encoder.getCodeLE(digits[i], e - 1);
+        int b = encoder.getCodeLE(digits[i], e);
+        int code;
+        if (low == Problem.TRUE_CODE || a == b) {
+            code = b;
+        } else if (low == Problem.FALSE_CODE) {
+            code = a;
+        } else if (a == Problem.FALSE_CODE && b == Problem.TRUE_CODE) {
+            code = low;
+        } else {
+            Problem problem = encoder.problem;
+            problem.addVariables(1);
+            code = problem.variablesCount;
+            problem.addClause(new int[] { -code, b });
+            problem.addClause(new int[] { -code, a, low });
+            problem.addClause(new int[] { encoder.negateCode(a), code });
+            problem.addClause(new int[] { encoder.negateCode(b), -low, code });
+        }
+        codes.get(i).put(c, code);
+        return code;
+    }
+
+}
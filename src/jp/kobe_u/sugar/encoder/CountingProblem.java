@@ -0,0 +1,149 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.kobe_u.sugar.SugarConstants;
+import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.SugarMain;
+
+/**
+ * CountingProblem only counts SAT variables, clauses, and the size of
+ * the DIMACS file which FileProblem would write.  No clause is stored.
+ * When created with categories, the totals are also counted for each
+ * category given by beginCategory, such as the class of the encoded literal.
+ */
+public class CountingProblem extends Problem {
+    public static final int HEADER_SIZE = 64;
+
+    /**
+     * Counting is interrupted when the file size reaches maxSize.
+     */
+    public long maxSize = Long.MAX_VALUE;
+
+    /* numbers of variables, clauses, and bytes of each category */
+    private Map<String,long[]> categories = null;
+
+    private String category = null;
+
+    private int variablesCount0;
+
+    private int clausesCount0;
+
+    private long fileSize0;
+
+    public CountingProblem() throws SugarException {
+        clear();
+    }
+
+    public CountingProblem(boolean countCategories) throws SugarException {
+        if (countCategories)
+            categories = new LinkedHashMap<String,long[]>();
+        clear();
+    }
+
+    @Override
+    public void clear() throws SugarException {
+        super.clear();
+        fileSize = HEADER_SIZE;
+        commit();
+        if (categories != null)
+            categories.clear();
+        category = null;
+        variablesCount0 = variablesCount;
+        clausesCount0 = clausesCount;
+        fileSize0 = fileSize;
+    }
+
+    @Override
+    public boolean isCategoryEnabled() {
+        return categories != null;
+    }
+
+    @Override
+    public void beginCategory(String category) throws SugarException {
+        if (categories == null)
+            return;
+        if (this.category != null) {
+            long[] totals = categories.get(this.category);
+            if (totals == null) {
+                totals = new long[3];
+                categories.put(this.category, totals);
+            }
+            totals[0] += variablesCount - variablesCount0;
+            totals[1] += clausesCount - clausesCount0;
+            totals[2] += fileSize - fileSize0;
+        }
+        this.category = category;
+        variablesCount0 = variablesCount;
+        clausesCount0 = clausesCount;
+        fileSize0 = fileSize;
+    }
+
+    /**
+     * Returns the numbers of SAT variables, clauses, and bytes
+     * of each category in the order of their first appearance
+     * (null if categories are not counted).
+     * The header and the clause added for an empty problem are not included.
+     */
+    public Map<String,long[]> getCategories() throws SugarException {
+        beginCategory(category);
+        return categories;
+    }
+
+    @Override
+    public void done() throws SugarException {
+        beginCategory(null);
+        if (clausesCount == 0) {
+            if (variablesCount == 0)
+                variablesCount++;
+            addNormalizedClause(new int[] { 1, -1 });
+            clausesCount++;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a DIMACS literal followed by a space.
+     */
+    public static int literalSize(int code) {
+        if (code < 0)
+            return code == Integer.MIN_VALUE ? 12 : FileProblem.stringSize(-code) + 2;
+        return FileProblem.stringSize(code) + 1;
+    }
+
+    @Override
+    public boolean isCommentEnabled() {
+        return SugarMain.debug >= 1;
+    }
+
+    @Override
+    public void addComment(String comment) throws SugarException {
+        if (SugarMain.debug >= 1)
+            fileSize += comment.length() + 3;
+    }
+
+    @Override
+    public void addPragmaDominant(int code0, int code1) throws SugarException {
+        fileSize += 2 + SugarConstants.PRAGMA.length() + 1 + FileProblem.PRAGMA_DOMINANT.length() + 1
+                + literalSize(code0) + literalSize(code1);
+    }
+
+    @Override
+    public void addNormalizedClause(int[] clause) throws SugarException {
+        long size = 2;
+        if (GCNF) {
+            size += groupsString == null ? 4 : groupsString.length() + 3;
+        } else if (GWCNF) {
+            if (groupsString == null)
+                size += 2 + literalSize(topWeight);
+            else
+                size += groupsString.length() + 1 + weightString.length() + 1;
+        }
+        for (int code : clause)
+            size += literalSize(code);
+        fileSize += size;
+        if (fileSize >= maxSize)
+            throw new SugarException("Encoding is interrupted because estimated file size becomes too large (" + fileSize + " bytes)");
+    }
+
+}
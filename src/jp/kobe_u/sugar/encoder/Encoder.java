@@ -90,6 +90,11 @@ public class Encoder extends OrderEncoder {
                 v.getDomain().appendValues(sb, true);
                 mapWriter.write(sb.toString());
                 mapWriter.write('\n');
+                int base = getCompactBase(v);
+                if (base > 0) {
+                    mapWriter.write("encoding " + v.getName() + " compact " + base);
+                    mapWriter.write('\n');
+                }
             }
         }
         for (BooleanVariable v : csp.getBooleanVariables()) {
@@ -189,7 +194,11 @@ public class Encoder extends OrderEncoder {
         if (result.startsWith("SAT") || result.startsWith("OPT")) {
             sat = true;
             for (IntegerVariable v : csp.getIntegerVariables()) {
-                v.decode(satValues);
+                int base = getCompactBase(v);
+                if (base > 0)
+                    v.decodeCompact(satValues, base);
+                else
+                    v.decode(satValues);
             }
             for (BooleanVariable v : csp.getBooleanVariables()) {
                 v.decode(satValues);
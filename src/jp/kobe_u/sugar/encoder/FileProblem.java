@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.List;
 
 import jp.kobe_u.sugar.SugarConstants;
 import jp.kobe_u.sugar.SugarException;
@@ -15,20 +16,63 @@ import jp.kobe_u.sugar.SugarMain;
 public class FileProblem extends Problem {
     public static boolean USE_NEWIO = true;
     
-    public static int SAT_BUFFER_SIZE = 4*1024;
+    public static boolean USE_FAST_WRITE = true;
+    
+    public static int SAT_BUFFER_SIZE = 64*1024;
+    
+    /**
+     * The minimum size of the write buffer and of the memory-mapped chunk,
+     * which must hold at least one literal written by the fast writer.
+     */
+    public static final int MIN_BUFFER_SIZE = 64;
+    
+    public static boolean USE_MMAP = false;
+    
+    public static int MMAP_CHUNK_SIZE = 64*1024*1024;
+    
+    public static int GZIP_BLOCK_SIZE = 1024*1024;
     
     public static long MAX_SAT_SIZE = 3*1024*1024*1024L;
     
     public static String PRAGMA_DOMINANT = "d";
     
+    private static final int HEADER_SIZE = 64;
+    
     private String satFileName;
 
     private FileChannel satFileChannel = null; 
 
     private ByteBuffer satByteBuffer = null;
     
+    private MappedFileWindow window = null;
+    
+    private final boolean mmap;
+    
+    private final boolean gzip;
+    
+    private ParallelGzipWriter gzipWriter = null;
+    
+    private long gzipSize = 0;
+    
+    private byte[] groupsPrefix = null;
+    
+    private byte[] defaultPrefix = null;
+    
+    private static final byte[] DIGIT_TENS = new byte[100];
+    
+    private static final byte[] DIGIT_ONES = new byte[100];
+    
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (byte)('0' + i / 10);
+            DIGIT_ONES[i] = (byte)('0' + i % 10);
+        }
+    }
+    
     public FileProblem(String satFileName) throws SugarException {
         this.satFileName = satFileName;
+        gzip = satFileName.endsWith(".gz");
+        mmap = USE_MMAP && ! gzip;
         clear();
     }
 
@@ -36,33 +80,65 @@ public class FileProblem extends Problem {
         if (satFileChannel != null)
             throw new SugarException("Internal error: re-opening file " + satFileName);
         try {
-            if (fileSize == 0) {
+            if (gzip) {
+                satFileChannel = (new RandomAccessFile(satFileName, "rw")).getChannel();
+                satFileChannel.position(gzipSize);
+                gzipWriter = new ParallelGzipWriter(satFileChannel, GZIP_BLOCK_SIZE);
+                satByteBuffer = ByteBuffer.wrap(gzipWriter.getBuffer());
+            } else if (mmap) {
+                satFileChannel = (new RandomAccessFile(satFileName, "rw")).getChannel();
+                if (fileSize == 0)
+                    satFileChannel.truncate(0);
+                window = new MappedFileWindow(satFileChannel, getHeader().length, MMAP_CHUNK_SIZE);
+                satByteBuffer = window.map(fileSize);
+            } else if (fileSize == 0) {
                 satFileChannel = (new FileOutputStream(satFileName)).getChannel();
             } else {
                 satFileChannel = (new RandomAccessFile(satFileName, "rw")).getChannel();
                 satFileChannel.position(fileSize);
             }
-            satByteBuffer = ByteBuffer.allocateDirect(SAT_BUFFER_SIZE);
+            if (! mmap && ! gzip)
+                satByteBuffer = ByteBuffer.allocateDirect(SAT_BUFFER_SIZE);
         } catch (IOException e) {
             throw new SugarException(e.getMessage(), e);
         }
     }
 
+    /*
+     * Empties the buffer, or maps the next chunk in memory-mapped mode.
+     */
+    private void advance() throws SugarException {
+        if (mmap) {
+            try {
+                satByteBuffer = window.advance();
+            } catch (IOException e) {
+                throw new SugarException(e.getMessage(), e);
+            }
+        } else {
+            flush();
+        }
+    }
+    
     public void write(byte[] b) throws SugarException {
+        write(b, 0, b.length);
+    }
+    
+    public void write(byte[] b, int off, int length) throws SugarException {
         if (satFileChannel == null)
             open();
-        int len = b.length;
-        if (satByteBuffer.position() + len > SAT_BUFFER_SIZE)
-            flush();
-        int pos = 0;
-        while (len > SAT_BUFFER_SIZE) {
-            satByteBuffer.put(b, pos, SAT_BUFFER_SIZE);
-            flush();
-            pos += SAT_BUFFER_SIZE;
-            len -= SAT_BUFFER_SIZE;
+        int len = length;
+        if (satByteBuffer.remaining() < len)
+            advance();
+        int pos = off;
+        while (len > satByteBuffer.remaining()) {
+            int n = satByteBuffer.remaining();
+            satByteBuffer.put(b, pos, n);
+            advance();
+            pos += n;
+            len -= n;
         }
         satByteBuffer.put(b, pos, len);
-        fileSize += b.length;
+        fileSize += length;
         if (fileSize >= MAX_SAT_SIZE) {
             (new File(satFileName)).delete();
             throw new SugarException("Encoding is interrupted because file size becomes too large (" + fileSize + " bytes)");
@@ -73,6 +149,68 @@ public class FileProblem extends Problem {
         write(s.getBytes());
     }
     
+    /*
+     * Makes room for len bytes in the buffer.
+     * len should not exceed MIN_BUFFER_SIZE.
+     */
+    private void reserve(int len) throws SugarException {
+        if (satFileChannel == null)
+            open();
+        if (satByteBuffer.remaining() < len)
+            advance();
+    }
+    
+    static int stringSize(int x) {
+        int p = 10;
+        for (int i = 1; i < 10; i++) {
+            if (x < p)
+                return i;
+            p = 10 * p;
+        }
+        return 10;
+    }
+    
+    /*
+     * Writes the decimal representation of i followed by a space.
+     * At most 12 bytes are written.
+     */
+    static void putInt(ByteBuffer buf, int i) {
+        int pos = buf.position();
+        if (i < 0) {
+            buf.put(pos++, (byte)'-');
+            if (i == Integer.MIN_VALUE) {
+                byte[] b = "2147483648".getBytes();
+                for (byte c : b)
+                    buf.put(pos++, c);
+                buf.put(pos++, (byte)' ');
+                buf.position(pos);
+                return;
+            }
+            i = -i;
+        }
+        int end = pos + stringSize(i);
+        int p = end;
+        while (i >= 100) {
+            int q = i / 100;
+            int r = i - q * 100;
+            i = q;
+            buf.put(--p, DIGIT_ONES[r]);
+            buf.put(--p, DIGIT_TENS[r]);
+        }
+        buf.put(--p, DIGIT_ONES[i]);
+        if (i >= 10)
+            buf.put(--p, DIGIT_TENS[i]);
+        buf.put(end++, (byte)' ');
+        buf.position(end);
+    }
+    
+    private void checkSize() throws SugarException {
+        if (fileSize >= MAX_SAT_SIZE) {
+            (new File(satFileName)).delete();
+            throw new SugarException("Encoding is interrupted because file size becomes too large (" + fileSize + " bytes)");
+        }
+    }
+    
     public void flush() throws SugarException {
         if (satFileChannel == null) {
             return;
@@ -83,6 +221,13 @@ public class FileProblem extends Problem {
                 throw new SugarException("Internal error: flushing unopened file " + satFileName);
              */
         }
+        if (mmap)
+            return;
+        if (gzip) {
+            gzipWriter.submit(satByteBuffer.array(), satByteBuffer.position());
+            satByteBuffer = ByteBuffer.wrap(gzipWriter.getBuffer());
+            return;
+        }
         try {
             satByteBuffer.flip();
             satFileChannel.write(satByteBuffer);
@@ -103,7 +248,18 @@ public class FileProblem extends Problem {
             */
         }
         try {
-            flush();
+            if (gzip) {
+                flush();
+                gzipWriter.close();
+                gzipSize += gzipWriter.getOutputSize();
+                gzipWriter = null;
+            } else if (mmap) {
+                window.putHeader(getHeader());
+                window.close(fileSize);
+                window = null;
+            } else {
+                flush();
+            }
             satFileChannel.close();
             satFileChannel = null;
             satByteBuffer = null;
@@ -112,8 +268,8 @@ public class FileProblem extends Problem {
         }
     }
     
-    public void update() throws SugarException {
-        int n = 64;
+    protected byte[] getHeader() throws SugarException {
+        int n = HEADER_SIZE;
         StringBuilder s = new StringBuilder();
         if (groups > 0) {
             if (GCNF) {
@@ -143,16 +299,43 @@ public class FileProblem extends Problem {
             s.append(" ");
         }
         s.append("\n");
-        String header = s.toString();
+        return s.toString().getBytes();
+    }
+    
+    public void update() throws SugarException {
+        byte[] header = getHeader();
+        if (mmap) {
+            if (satFileChannel == null)
+                open();
+            window.putHeader(header);
+            if (fileSize == 0)
+                fileSize = header.length;
+            try {
+                satByteBuffer = window.seek(fileSize);
+            } catch (IOException e) {
+                throw new SugarException(e.getMessage(), e);
+            }
+            return;
+        }
         if (satFileChannel != null)
             throw new SugarException("Internal error: updating opening file " + satFileName);
         try {
             RandomAccessFile satFile1 = new RandomAccessFile(satFileName, "rw");
             satFile1.seek(0);
-            satFile1.write(header.getBytes());
-            if (fileSize == 0)
-                fileSize = header.length();
-            satFile1.setLength(fileSize);
+            if (gzip) {
+                byte[] member = ParallelGzipWriter.storedMember(header);
+                satFile1.write(member);
+                if (fileSize == 0) {
+                    fileSize = header.length;
+                    gzipSize = member.length;
+                    satFile1.setLength(gzipSize);
+                }
+            } else {
+                satFile1.write(header);
+                if (fileSize == 0)
+                    fileSize = header.length;
+                satFile1.setLength(fileSize);
+            }
             satFile1.close();
         } catch (IOException e) {
             throw new SugarException(e.getMessage(), e);
@@ -169,9 +352,13 @@ public class FileProblem extends Problem {
     }
     
     public void cancel() throws SugarException {
+        if (gzip)
+            throw new SugarException("cancel is not supported for compressed file " + satFileName);
         done();
         super.cancel();
         update();
+        if (mmap)
+            close();
     }
     
     public void done() throws SugarException {
@@ -183,9 +370,15 @@ public class FileProblem extends Problem {
         }
         flush();
         close();
-        update();
+        if (! mmap)
+            update();
     }
     
+    @Override
+    public boolean isCommentEnabled() {
+        return SugarMain.debug >= 1;
+    }
+
     public void addComment(String comment) throws SugarException {
         if (SugarMain.debug >= 1)
             write("c " + comment + "\n");
@@ -195,7 +388,61 @@ public class FileProblem extends Problem {
         write("c " + SugarConstants.PRAGMA + " " + PRAGMA_DOMINANT + " " + code0 + " " + code1 + "\n");
     }
     
+    public void setGroups(int groups, int topWeight) throws SugarException {
+        super.setGroups(groups, topWeight);
+        defaultPrefix = null;
+    }
+
+    public void beginGroups(List<Integer> groups, int weight) {
+        super.beginGroups(groups, weight);
+        groupsPrefix = null;
+        if (! USE_FAST_WRITE || groupsString == null) {
+        } else if (GCNF) {
+            groupsPrefix = ("{" + groupsString + "} ").getBytes();
+        } else if (GWCNF) {
+            groupsPrefix = (groupsString + " " + weightString + " ").getBytes();
+        }
+    }
+
+    public void endGroups() {
+        super.endGroups();
+        groupsPrefix = null;
+    }
+    
+    private byte[] getDefaultPrefix() {
+        if (defaultPrefix == null) {
+            if (GCNF)
+                defaultPrefix = "{0} ".getBytes();
+            else if (GWCNF)
+                defaultPrefix = ("0 " + topWeight + " ").getBytes();
+        }
+        return defaultPrefix;
+    }
+    
+    private void addNormalizedClauseFast(int[] clause) throws SugarException {
+        long len = 0;
+        if (GCNF || GWCNF) {
+            byte[] prefix = groupsPrefix == null ? getDefaultPrefix() : groupsPrefix;
+            write(prefix);
+        }
+        for (int code : clause) {
+            reserve(12);
+            int pos = satByteBuffer.position();
+            putInt(satByteBuffer, code);
+            len += satByteBuffer.position() - pos;
+        }
+        reserve(2);
+        satByteBuffer.put((byte)'0');
+        satByteBuffer.put((byte)'\n');
+        fileSize += len + 2;
+        checkSize();
+    }
+
     public void addNormalizedClause(int[] clause) throws SugarException {
+        if (USE_FAST_WRITE) {
+            addNormalizedClauseFast(clause);
+            return;
+        }
         if (GCNF) {
             if (groupsString == null)
                 write("{0} ");
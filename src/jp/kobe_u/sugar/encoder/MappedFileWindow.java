@@ -0,0 +1,91 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedFileWindow writes a file through a memory-mapped window
+ * of a fixed chunk size, which is moved forward as the file grows.
+ * A header of a fixed size at the beginning of the file is mapped separately
+ * so that it can be rewritten at any time.
+ * The file is extended by the mappings and truncated to its size by close().
+ * @see FileProblem
+ * @see jp.kobe_u.sugar.pb.PBFileProblem
+ */
+public class MappedFileWindow {
+    private FileChannel channel;
+
+    private int chunkSize;
+
+    private MappedByteBuffer headerBuffer;
+
+    private MappedByteBuffer buffer = null;
+
+    private long mapPosition = 0;
+
+    public MappedFileWindow(FileChannel channel, int headerSize, int chunkSize) throws IOException {
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+        headerBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize);
+    }
+
+    /**
+     * Returns the buffer of the current window.
+     * @return the buffer
+     */
+    public MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Maps the window starting at position.
+     * @param position the file position
+     * @return the buffer of the new window
+     */
+    public MappedByteBuffer map(long position) throws IOException {
+        mapPosition = position;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkSize);
+        return buffer;
+    }
+
+    /**
+     * Moves the write position to the given file position,
+     * mapping a new window only when it is outside of the current one.
+     * @param position the file position
+     * @return the buffer of the window
+     */
+    public MappedByteBuffer seek(long position) throws IOException {
+        long offset = position - mapPosition;
+        if (buffer != null && 0 <= offset && offset < buffer.capacity())
+            buffer.position((int)offset);
+        else
+            map(position);
+        return buffer;
+    }
+
+    /**
+     * Maps the next window starting at the current write position.
+     * @return the buffer of the new window
+     */
+    public MappedByteBuffer advance() throws IOException {
+        return map(mapPosition + buffer.position());
+    }
+
+    public void putHeader(byte[] header) {
+        for (int i = 0; i < header.length; i++)
+            headerBuffer.put(i, header[i]);
+    }
+
+    /**
+     * Releases the windows and truncates the file to the given size.
+     * The channel is not closed.
+     * @param size the file size
+     */
+    public void close(long size) throws IOException {
+        headerBuffer = null;
+        buffer = null;
+        channel.truncate(size);
+    }
+
+}
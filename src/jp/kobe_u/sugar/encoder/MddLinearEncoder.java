@@ -0,0 +1,177 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jp.kobe_u.sugar.SugarException;
+import jp.kobe_u.sugar.csp.IntegerDomain;
+import jp.kobe_u.sugar.csp.IntegerVariable;
+
+/**
+ * MddLinearEncoder encodes a linear constraint a1*v1+...+an*vn+b &lt;= 0
+ * by a reduced ordered multi-valued decision diagram (MDD).
+ * A node at level i represents the constraint ai*vi+...+an*vn &lt;= k.
+ * Each node is labeled by the interval of k giving the same constraint,
+ * so that equivalent partial sums share a node.
+ * A node at the last level is an order encoding literal,
+ * and other nodes are new SAT variables n with clauses
+ * <pre>
+ * -n | -(vi &gt;= c) | child(k - ai*c)   (ai &gt; 0)
+ * -n | -(vi &lt;= c) | child(k - ai*c)   (ai &lt; 0)
+ * </pre>
+ * The root node is replaced by the other literals of the clause.
+ * @see OrderEncoder#USE_MDD
+ */
+public class MddLinearEncoder {
+    private static final long INF = Long.MAX_VALUE / 4;
+
+    private OrderEncoder encoder;
+
+    private Problem problem;
+
+    private int[] as;
+
+    private IntegerVariable[] vs;
+
+    private int[][] values;
+
+    /* lower and upper bounds of ai*vi+...+an*vn */
+    private long[] lo;
+
+    private long[] hi;
+
+    /* nodes of each level indexed by the lower end of the interval */
+    private List<TreeMap<Long,long[]>> nodes;
+
+    private int nodesCount = 0;
+
+    public MddLinearEncoder(OrderEncoder encoder, int[] as, IntegerVariable[] vs) throws SugarException {
+        this.encoder = encoder;
+        this.problem = encoder.problem;
+        this.as = as;
+        this.vs = vs;
+        int n = vs.length;
+        values = new int[n][];
+        lo = new long[n + 1];
+        hi = new long[n + 1];
+        nodes = new ArrayList<TreeMap<Long,long[]>>(n);
+        for (int i = 0; i < n; i++)
+            nodes.add(new TreeMap<Long,long[]>());
+        for (int i = n - 1; i >= 0; i--) {
+            IntegerDomain domain = vs[i].getDomain();
+            values[i] = new int[domain.size()];
+            int j = 0;
+            Iterator<Integer> iter = domain.values();
+            while (iter.hasNext())
+                values[i][j++] = iter.next();
+            long x1 = (long)as[i] * domain.getLowerBound();
+            long x2 = (long)as[i] * domain.getUpperBound();
+            lo[i] = lo[i + 1] + Math.min(x1, x2);
+            hi[i] = hi[i + 1] + Math.max(x1, x2);
+        }
+    }
+
+    /**
+     * Returns the number of SAT variables introduced for MDD nodes.
+     */
+    public int getNodesCount() {
+        return nodesCount;
+    }
+
+    /**
+     * Adds clauses of clause0 | a1*v1+...+an*vn+b &lt;= 0.
+     */
+    public void encode(int b, int[] clause0) throws SugarException {
+        long k = - (long)b;
+        if (k >= hi[0])
+            return;
+        if (k < lo[0]) {
+            problem.addClause(clause0);
+            return;
+        }
+        addClauses(0, children(0, k), clause0);
+    }
+
+    /*
+     * Returns { lower end, upper end, code } of the node for
+     * ai*vi+...+an*vn <= k.
+     */
+    private long[] node(int i, long k) throws SugarException {
+        if (i == vs.length)
+            return k >= 0 ? new long[] { 0, INF, Problem.TRUE_CODE }
+                          : new long[] { -INF, -1, Problem.FALSE_CODE };
+        if (k >= hi[i])
+            return new long[] { hi[i], INF, Problem.TRUE_CODE };
+        if (k < lo[i])
+            return new long[] { -INF, lo[i] - 1, Problem.FALSE_CODE };
+        Map.Entry<Long,long[]> e = nodes.get(i).floorEntry(k);
+        if (e != null && k <= e.getValue()[0])
+            return new long[] { e.getKey(), e.getValue()[0], e.getValue()[1] };
+        long beta = -INF;
+        long gamma = INF;
+        int[] children = new int[values[i].length];
+        boolean redundant = true;
+        for (int j = 0; j < children.length; j++) {
+            long ac = (long)as[i] * values[i][j];
+            long[] child = node(i + 1, k - ac);
+            beta = Math.max(beta, child[0] + ac);
+            gamma = Math.min(gamma, child[1] + ac);
+            children[j] = (int)child[2];
+            if (children[j] != children[0])
+                redundant = false;
+        }
+        int code;
+        if (i == vs.length - 1) {
+            code = encoder.getCodeLE(vs[i], as[i], (int)k);
+        } else if (redundant) {
+            code = children[0];
+        } else {
+            problem.addVariables(1);
+            code = problem.variablesCount;
+            nodesCount++;
+            addClauses(i, children, new int[] { -code });
+        }
+        nodes.get(i).put(beta, new long[] { gamma, code });
+        return new long[] { beta, gamma, code };
+    }
+
+    private int[] children(int i, long k) throws SugarException {
+        int[] children = new int[values[i].length];
+        for (int j = 0; j < children.length; j++)
+            children[j] = (int)node(i + 1, k - (long)as[i] * values[i][j])[2];
+        return children;
+    }
+
+    /*
+     * Adds clauses of prefix | (vi's value implies the child)
+     * in the order of weaker conditions.
+     * A clause is omitted when it is implied by the previous one.
+     */
+    private void addClauses(int i, int[] children, int[] prefix) throws SugarException {
+        int m = prefix.length;
+        int[] clause = new int[m + 2];
+        System.arraycopy(prefix, 0, clause, 0, m);
+        int a = as[i];
+        int last = Problem.TRUE_CODE;
+        for (int t = 0; t < children.length; t++) {
+            int j = a > 0 ? t : children.length - 1 - t;
+            int child = children[j];
+            if (child == last)
+                continue;
+            int c = values[i][j];
+            if (a > 0)
+                clause[m] = encoder.getCodeLE(vs[i], c - 1);
+            else
+                clause[m] = encoder.negateCode(encoder.getCodeLE(vs[i], c));
+            clause[m + 1] = child;
+            problem.addClause(clause);
+            last = child;
+            if (child == Problem.FALSE_CODE)
+                break;
+        }
+    }
+
+}
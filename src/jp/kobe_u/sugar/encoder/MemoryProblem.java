@@ -0,0 +1,141 @@
+package jp.kobe_u.sugar.encoder;
+
+import jp.kobe_u.sugar.SugarException;
+
+/**
+ * MemoryProblem stores SAT clauses in memory.
+ * Literals of all clauses are stored in a flat int array,
+ * and the i-th clause consists of literals from
+ * getClauseStart(i) (inclusive) to getClauseStart(i+1) (exclusive).
+ * <pre>
+ * int[] lits = problem.getLiterals();
+ * for (int i = 0; i &lt; problem.clausesCount; i++)
+ *     for (int k = problem.getClauseStart(i); k &lt; problem.getClauseStart(i+1); k++)
+ *         ... lits[k] ...
+ * </pre>
+ * commit() and cancel() only save and restore the watermarks.
+ * Groups, comments, and pragmas are not stored.
+ */
+public class MemoryProblem extends Problem {
+    public static int INITIAL_CAPACITY = 1024;
+
+    private int[] literals;
+
+    private int[] offsets;
+
+    private int literalsCount = 0;
+
+    private int literalsCountSave = 0;
+
+    public MemoryProblem() throws SugarException {
+        literals = new int[INITIAL_CAPACITY];
+        offsets = new int[INITIAL_CAPACITY];
+        clear();
+    }
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static int[] grow(int[] a, long size) throws SugarException {
+        if (size > MAX_ARRAY_SIZE)
+            throw new SugarException("Encoding is interrupted because MemoryProblem becomes too large (" + size + " elements)");
+        int n = a.length;
+        while (n < size)
+            n = n < (1 << 29) ? 2 * n : MAX_ARRAY_SIZE;
+        int[] a1 = new int[n];
+        System.arraycopy(a, 0, a1, 0, a.length);
+        return a1;
+    }
+
+    @Override
+    public void clear() throws SugarException {
+        literalsCount = 0;
+        super.clear();
+    }
+
+    @Override
+    public void commit() throws SugarException {
+        super.commit();
+        literalsCountSave = literalsCount;
+    }
+
+    @Override
+    public void cancel() throws SugarException {
+        super.cancel();
+        literalsCount = literalsCountSave;
+    }
+
+    @Override
+    public void done() throws SugarException {
+        if (clausesCount == 0) {
+            if (variablesCount == 0)
+                variablesCount++;
+            addNormalizedClause(new int[] { 1, -1 });
+            clausesCount++;
+        }
+    }
+
+    @Override
+    public void addNormalizedClause(int[] clause) throws SugarException {
+        int n = clause.length;
+        if ((long)literalsCount + n > literals.length)
+            literals = grow(literals, (long)literalsCount + n);
+        if ((long)clausesCount + 2 > offsets.length)
+            offsets = grow(offsets, (long)clausesCount + 2);
+        System.arraycopy(clause, 0, literals, literalsCount, n);
+        offsets[clausesCount] = literalsCount;
+        literalsCount += n;
+        offsets[clausesCount + 1] = literalsCount;
+        fileSize += 4 * (n + 1);
+    }
+
+    /**
+     * Returns the array of literals.
+     * Only the first getLiteralsCount() elements are valid,
+     * and the array may be replaced when clauses are added.
+     */
+    public int[] getLiterals() {
+        return literals;
+    }
+
+    public int getLiteralsCount() {
+        return literalsCount;
+    }
+
+    /**
+     * Returns the start position of the i-th clause in getLiterals().
+     * getClauseStart(clausesCount) returns the end of the last clause.
+     */
+    public int getClauseStart(int i) {
+        return offsets[i];
+    }
+
+    public int getClauseSize(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    public int getLiteral(int i, int j) {
+        return literals[offsets[i] + j];
+    }
+
+    /**
+     * Returns a copy of the i-th clause.
+     */
+    public int[] getClause(int i) {
+        int[] clause = new int[getClauseSize(i)];
+        System.arraycopy(literals, offsets[i], clause, 0, clause.length);
+        return clause;
+    }
+
+    /**
+     * Adds the variables and clauses to another problem
+     * (for example, a FileProblem).
+     */
+    public void addTo(Problem problem) throws SugarException {
+        problem.addVariables(variablesCount - problem.variablesCount);
+        for (int i = 0; i < clausesCount; i++) {
+            problem.addNormalizedClause(getClause(i));
+            problem.clausesCount++;
+        }
+    }
+
+}
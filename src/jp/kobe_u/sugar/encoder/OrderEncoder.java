@@ -1,8 +1,12 @@
 package jp.kobe_u.sugar.encoder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.csp.BooleanLiteral;
@@ -24,11 +28,119 @@ import jp.kobe_u.sugar.csp.RelationLiteral;
 import jp.kobe_u.sugar.csp.RelationLiteral.Brick;
 
 public class OrderEncoder extends AbstractEncoder {
+    /**
+     * Encodes linear constraints of MDD_MIN_SIZE or more variables
+     * with MDDs when true.
+     * @see MddLinearEncoder
+     */
+    public static boolean USE_MDD = false;
+    public static int MDD_MIN_SIZE = 3;
+
+    /**
+     * Encodes linear constraints over 0-1 variables with unit coefficients
+     * by the given cardinality encoding when not null.
+     * @see CardinalityEncoder
+     */
+    public static CardinalityEncoder.Encoding CARDINALITY_ENCODING = null;
+    public static int CARDINALITY_MIN_SIZE = 3;
+
+    /**
+     * Encodes relation literals given by supports with the support encoding
+     * when it is estimated smaller than the conflict bricks.
+     * @see #encodeRelationSupports(RelationLiteral, List, int[])
+     */
+    public static boolean SUPPORT_ENCODING = false;
+
+    /**
+     * Integer variables with COMPACT_ORDER_MIN_SIZE or more values in their ranges
+     * (except objective variables) are encoded by the compact order encoding
+     * of base COMPACT_ORDER_BASE when positive.
+     * The selection is kept in the encoder and the CSP variables are not modified.
+     * Variables can be also selected by IntegerVariable.setEncoding.
+     * @see CompactOrderVariable
+     */
+    public static int COMPACT_ORDER_MIN_SIZE = 0;
+    public static int COMPACT_ORDER_BASE = 8;
+
+    private Map<IntegerVariable,CompactOrderVariable> compactVariables =
+        new HashMap<IntegerVariable,CompactOrderVariable>();
+
+    /*
+     * Bases of the variables selected by COMPACT_ORDER_MIN_SIZE.
+     */
+    private Map<IntegerVariable,Integer> compactBases =
+        new HashMap<IntegerVariable,Integer>();
 
     public OrderEncoder(CSP csp, Problem problem) {
         super(csp, problem);
     }
 
+    @Override
+    public void encode() throws SugarException {
+        compactBases.clear();
+        if (COMPACT_ORDER_MIN_SIZE > 0) {
+            List<IntegerVariable> objectiveVariables = csp.getObjectiveVariables();
+            for (IntegerVariable v : csp.getIntegerVariables()) {
+                long size = (long)v.getDomain().getUpperBound() - v.getDomain().getLowerBound() + 1;
+                if (v.getEncoding() == Encoding.ORDER && size >= COMPACT_ORDER_MIN_SIZE
+                        && (objectiveVariables == null || ! objectiveVariables.contains(v))) {
+                    compactBases.put(v, COMPACT_ORDER_BASE);
+                }
+            }
+        }
+        compactVariables.clear();
+        super.encode();
+    }
+
+    /**
+     * Returns the base of the compact order encoding of v,
+     * or 0 if v is order encoded.
+     */
+    protected int getCompactBase(IntegerVariable v) {
+        Integer base = compactBases.get(v);
+        if (base != null)
+            return base;
+        return v.getEncoding() == Encoding.COMPACT_ORDER ? v.getBase() : 0;
+    }
+
+    @Override
+    protected int getSatVariablesSize(IntegerVariable v) {
+        int base = getCompactBase(v);
+        if (base == 0)
+            return v.getSatVariablesSize();
+        int size = 0;
+        for (int digitSize : v.getDigitSizes(base))
+            size += digitSize - 1;
+        return size;
+    }
+
+    private boolean hasCompactVariables() {
+        if (! compactBases.isEmpty())
+            return true;
+        for (IntegerVariable v : csp.getIntegerVariables()) {
+            if (v.getEncoding() == Encoding.COMPACT_ORDER)
+                return true;
+        }
+        return false;
+    }
+
+    private CompactOrderVariable getCompactVariable(IntegerVariable v) throws SugarException {
+        CompactOrderVariable cv = compactVariables.get(v);
+        if (cv == null || cv.getDigits()[0].getCode() != v.getCode()) {
+            cv = new CompactOrderVariable(this, v, getCompactBase(v));
+            compactVariables.put(v, cv);
+        }
+        return cv;
+    }
+
+    @Override
+    protected AbstractEncoder newWorker(Problem problem) {
+        // MDD nodes, cardinality and compact order encodings need new SAT variables of the problem
+        if (USE_MDD || CARDINALITY_ENCODING != null || SUPPORT_ENCODING || hasCompactVariables())
+            return null;
+        return new OrderEncoder(csp, problem);
+    }
+
     private int[] expand(int[] clause0, int n) {
         int[] clause = new int[clause0.length + n];
         for (int i = 0; i < clause0.length; i++) {
@@ -38,17 +150,29 @@ public class OrderEncoder extends AbstractEncoder {
     }
 
     // v <= value
-    private int getCodeLE(IntegerVariable v, int value) {
+    int getCodeLE(IntegerVariable v, int value) throws SugarException {
+        if (value < v.getDomain().getLowerBound()) {
+            return Problem.FALSE_CODE;
+        } else if (value >= v.getDomain().getUpperBound()) {
+            return Problem.TRUE_CODE;
+        } else if (getCompactBase(v) > 0) {
+            return getCompactVariable(v).getCodeLE(value);
+        }
+        return v.getCode() + v.sizeLE(value) - 1;
+    }
+
+    // v <= value where value may be out of the int range
+    private int getCodeLE(IntegerVariable v, long value) throws SugarException {
         if (value < v.getDomain().getLowerBound()) {
             return Problem.FALSE_CODE;
         } else if (value >= v.getDomain().getUpperBound()) {
             return Problem.TRUE_CODE;
         }
-        return v.getCode() + v.getDomain().sizeLE(value) - 1;
+        return getCodeLE(v, (int)value);
     }
 
     // a * v <= b
-    private int getCodeLE(IntegerVariable v, int a, int b) {
+    int getCodeLE(IntegerVariable v, int a, int b) throws SugarException {
         int code;
         if (a >= 0) {
 //          int c = (int) Math.floor((double) b / a);
@@ -108,7 +232,12 @@ public class OrderEncoder extends AbstractEncoder {
 
     @Override
     public void encodeIntegerVariable(IntegerVariable v) throws SugarException {
-        problem.addComment(v.toString());
+        if (problem.isCommentEnabled())
+            problem.addComment(v.toString());
+        if (getCompactBase(v) > 0) {
+            getCompactVariable(v).encode();
+            return;
+        }
         IntegerDomain domain = v.getDomain();
         int[] clause = new int[2];
         int a0 = domain.getLowerBound();
@@ -193,6 +322,99 @@ public class OrderEncoder extends AbstractEncoder {
         }
     }
     
+    private boolean isCardinality(int[] as, IntegerVariable[] vs) {
+        for (int i = 0; i < vs.length; i++) {
+            if (! vs[i].isBoolean() || (as[i] != 1 && as[i] != -1))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * a1*v1+...+an*vn+b <= 0 is encoded as a cardinality constraint
+     * on literals (vi >= 1) for ai = 1 and (vi <= 0) for ai = -1
+     * since -vi = (vi <= 0) - 1.
+     */
+    private void encodeCardinality(int[] as, IntegerVariable[] vs, int b, int[] clause) throws SugarException {
+        int k = -b;
+        int[] xs = new int[vs.length];
+        int n = 0;
+        for (int i = 0; i < vs.length; i++) {
+            int x;
+            if (as[i] > 0) {
+                x = negateCode(getCodeLE(vs[i], 0));
+            } else {
+                x = getCodeLE(vs[i], 0);
+                k++;
+            }
+            if (x == Problem.TRUE_CODE)
+                k--;
+            else if (x != Problem.FALSE_CODE)
+                xs[n++] = x;
+        }
+        int[] xs1 = new int[n];
+        System.arraycopy(xs, 0, xs1, 0, n);
+        new CardinalityEncoder(problem, CARDINALITY_ENCODING).encode(xs1, k, clause);
+    }
+
+    private boolean hasCompactVariable(IntegerVariable[] vs) {
+        for (IntegerVariable v : vs) {
+            if (getCompactBase(v) > 0)
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Compact order variables are replaced with their digits,
+     * and the constraint is encoded by an MDD
+     * where digits of larger weights come first.
+     */
+    private void encodeCompactLinearLe(int[] as, IntegerVariable[] vs, int b, int[] clause) throws SugarException {
+        final List<Integer> as1 = new ArrayList<Integer>();
+        final List<IntegerVariable> vs1 = new ArrayList<IntegerVariable>();
+        for (int i = 0; i < vs.length; i++) {
+            if (getCompactBase(vs[i]) > 0) {
+                CompactOrderVariable cv = getCompactVariable(vs[i]);
+                IntegerVariable[] digits = cv.getDigits();
+                b += as[i] * vs[i].getDomain().getLowerBound();
+                for (int j = 0; j < digits.length; j++) {
+                    if (digits[j].getDomain().size() > 1) {
+                        as1.add(as[i] * cv.getWeight(j));
+                        vs1.add(digits[j]);
+                    }
+                }
+            } else {
+                as1.add(as[i]);
+                vs1.add(vs[i]);
+            }
+        }
+        Integer[] order = new Integer[vs1.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            private long width(int i) {
+                IntegerDomain d = vs1.get(i).getDomain();
+                return Math.abs((long)as1.get(i)) * ((long)d.getUpperBound() - d.getLowerBound());
+            }
+            public int compare(Integer i, Integer j) {
+                return Long.compare(width(j), width(i));
+            }
+        });
+        int[] as2 = new int[order.length];
+        IntegerVariable[] vs2 = new IntegerVariable[order.length];
+        for (int i = 0; i < order.length; i++) {
+            as2[i] = as1.get(order[i]);
+            vs2[i] = vs1.get(order[i]);
+        }
+        if (vs2.length == 0) {
+            if (b > 0)
+                problem.addClause(clause);
+            return;
+        }
+        new MddLinearEncoder(this, as2, vs2).encode(b, clause);
+    }
+
     private void encodeLinearLeLiteral(LinearLeLiteral lit, int[] clause) throws SugarException {
         if (lit.isValid()) {
         } else if (lit.isSimple()) {
@@ -206,6 +428,19 @@ public class OrderEncoder extends AbstractEncoder {
             int[] as = new int[n];
             for (int i = 0; i < n; i++)
                 as[i] = linearSum.getA(vs[i]);
+            if (CARDINALITY_ENCODING != null && n >= CARDINALITY_MIN_SIZE
+                    && isCardinality(as, vs)) {
+                encodeCardinality(as, vs, linearSum.getB(), clause);
+                return;
+            }
+            if (hasCompactVariable(vs)) {
+                encodeCompactLinearLe(as, vs, linearSum.getB(), clause);
+                return;
+            }
+            if (USE_MDD && n >= MDD_MIN_SIZE) {
+                new MddLinearEncoder(this, as, vs).encode(linearSum.getB(), clause);
+                return;
+            }
             clause = expand(clause, n);
             encodeLinearLe(as, vs, 0, linearSum.getB(), clause);
         }
@@ -241,6 +476,21 @@ public class OrderEncoder extends AbstractEncoder {
             LinearSum linearSum = lit.getLinearExpression(); 
             int n = linearSum.size();
             IntegerVariable[] vs = linearSum.getVariablesSorted();
+            if (hasCompactVariable(vs)) {
+                // clause | e <= -1 | e >= 1 is encoded with a new SAT variable p as
+                // (clause | p | e+1 <= 0) & (-p | -e+1 <= 0)
+                problem.addVariables(1);
+                int p = problem.variablesCount;
+                LinearSum e1 = new LinearSum(1);
+                e1.add(linearSum);
+                clause = expand(clause, 1);
+                clause[0] = p;
+                encodeLinearLeLiteral(new LinearLeLiteral(e1), clause);
+                LinearSum e2 = new LinearSum(1);
+                e2.subtract(linearSum);
+                encodeLinearLeLiteral(new LinearLeLiteral(e2), new int[] { -p });
+                return;
+            }
             int[] as = new int[n];
             for (int i = 0; i < n; i++)
                 as[i] = linearSum.getA(vs[i]);
@@ -249,7 +499,87 @@ public class OrderEncoder extends AbstractEncoder {
         }
     }
 
+    /*
+     * Estimates numbers of literals of the support encoding and
+     * the conflict bricks without computing the bricks.
+     * Bricks around sparse supports are about n-1 for each tuple,
+     * so that the support encoding is chosen for relations of larger arities.
+     */
+    private boolean isSupportEncodingSmaller(RelationLiteral lit, List<int[]> supports) {
+        int n = lit.arity;
+        long t = supports.size();
+        long domains = 0;
+        long points = 1;
+        for (int i = 0; i < n; i++) {
+            long size = lit.vs[i].getDomain().size();
+            domains += size;
+            points = Math.min(points * size, Long.MAX_VALUE / 4);
+        }
+        long bricks = Math.min(points - t, (n - 1) * t + 1);
+        long supportSize = t * (5*n + 1) + 3 * domains;
+        return supportSize < 2 * n * bricks;
+    }
+
+    /*
+     * Support encoding of a relation with allowed tuples t1,...,tk.
+     * New SAT variable yj means vs = tj.
+     *   -yj | vi <= tji,  -yj | vi >= tji
+     *   clause0 | y1 | ... | yk
+     *   clause0 | vi != c | yj for tj with tji = c    (supports of vi = c)
+     * The last clauses make unit propagation maintain arc consistency.
+     */
+    private void encodeRelationSupports(RelationLiteral lit, List<int[]> supports, int[] clause0) throws SugarException {
+        int n = lit.arity;
+        int k = supports.size();
+        int[] ys = new int[k];
+        for (int j = 0; j < k; j++) {
+            problem.addVariables(1);
+            ys[j] = problem.variablesCount;
+            int[] tuple = supports.get(j);
+            for (int i = 0; i < n; i++) {
+                IntegerVariable v = lit.vs[i];
+                problem.addClause(new int[] { -ys[j], getCodeLE(v, tuple[i]) });
+                problem.addClause(new int[] { -ys[j], negateCode(getCodeLE(v, tuple[i] - 1)) });
+            }
+        }
+        int[] clause = expand(clause0, k);
+        System.arraycopy(ys, 0, clause, 0, k);
+        problem.addClause(clause);
+        for (int i = 0; i < n; i++) {
+            IntegerVariable v = lit.vs[i];
+            Map<Integer,List<Integer>> valueSupports = new HashMap<Integer,List<Integer>>();
+            for (int j = 0; j < k; j++) {
+                int c = supports.get(j)[i];
+                List<Integer> list = valueSupports.get(c);
+                if (list == null) {
+                    list = new ArrayList<Integer>();
+                    valueSupports.put(c, list);
+                }
+                list.add(ys[j]);
+            }
+            Iterator<Integer> iter = v.getDomain().values();
+            while (iter.hasNext()) {
+                int c = iter.next();
+                List<Integer> list = valueSupports.get(c);
+                int m = list == null ? 0 : list.size();
+                clause = expand(clause0, m + 2);
+                clause[0] = getCodeLE(v, c - 1);
+                clause[1] = negateCode(getCodeLE(v, c));
+                for (int j = 0; j < m; j++)
+                    clause[j + 2] = list.get(j);
+                problem.addClause(clause);
+            }
+        }
+    }
+
     private void encodeRelationLiteral(RelationLiteral lit, int[] clause0) throws SugarException {
+        if (SUPPORT_ENCODING) {
+            List<int[]> supports = lit.getSupports();
+            if (supports != null && isSupportEncodingSmaller(lit, supports)) {
+                encodeRelationSupports(lit, supports, clause0);
+                return;
+            }
+        }
         int arity = lit.arity;
         int[] clause = new int[2*arity + clause0.length];
         for (int i = 0; i < clause0.length; i++) {
@@ -266,6 +596,114 @@ public class OrderEncoder extends AbstractEncoder {
         }
     }
 
+    private int[] toArray(IntegerDomain domain) throws SugarException {
+        int[] values = new int[domain.size()];
+        int i = 0;
+        Iterator<Integer> iter = domain.values();
+        while (iter.hasNext())
+            values[i++] = iter.next();
+        return values;
+    }
+
+    /*
+     * z = x*y is encoded by (x >= a & y >= b -> z >= ab) and
+     * (x <= a & y <= b -> z <= ab) when x and y are non-negative,
+     * otherwise by (x = a -> z = a*y) for each value a of x
+     * where x has the smaller domain.
+     * A clause is omitted when its neighbor on the grid of (a, b)
+     * has the same literal of z, since the neighbor implies it.
+     */
+    private void encodeProductLiteral(ProductLiteral lit, int[] clause0) throws SugarException {
+        IntegerVariable z = lit.getV();
+        IntegerVariable x = lit.getV1();
+        IntegerVariable y = lit.getV2();
+        if (x.getDomain().size() > y.getDomain().size()) {
+            x = lit.getV2();
+            y = lit.getV1();
+        }
+        int[] as = toArray(x.getDomain());
+        int[] bs = toArray(y.getDomain());
+        int n = as.length;
+        int m = bs.length;
+        // ge[i][j] = (z >= as[i]*bs[j]), le[i][j] = (z <= as[i]*bs[j])
+        int[][] ge = new int[n][m];
+        int[][] le = new int[n][m];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                long ab = (long)as[i] * bs[j];
+                ge[i][j] = negateCode(getCodeLE(z, ab - 1));
+                le[i][j] = getCodeLE(z, ab);
+            }
+        }
+        if (as[0] >= 0 && bs[0] >= 0) {
+            int[] clause = expand(clause0, 3);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < m; j++) {
+                    if ((i == 0 || ge[i][j] != ge[i-1][j]) && (j == 0 || ge[i][j] != ge[i][j-1])) {
+                        clause[0] = getCodeLE(x, as[i] - 1);
+                        clause[1] = getCodeLE(y, bs[j] - 1);
+                        clause[2] = ge[i][j];
+                        problem.addClause(clause);
+                    }
+                    if ((i == n-1 || le[i][j] != le[i+1][j]) && (j == m-1 || le[i][j] != le[i][j+1])) {
+                        clause[0] = negateCode(getCodeLE(x, as[i]));
+                        clause[1] = negateCode(getCodeLE(y, bs[j]));
+                        clause[2] = le[i][j];
+                        problem.addClause(clause);
+                    }
+                }
+            }
+        } else {
+            int[] clause = expand(clause0, 4);
+            for (int i = 0; i < n; i++) {
+                int a = as[i];
+                clause[0] = getCodeLE(x, a - 1);
+                clause[1] = negateCode(getCodeLE(x, a));
+                // y <= b -> z <= ab (z >= ab if a < 0)
+                int[] upper = a >= 0 ? le[i] : ge[i];
+                // y >= b -> z >= ab (z <= ab if a < 0)
+                int[] lower = a >= 0 ? ge[i] : le[i];
+                for (int j = 0; j < m; j++) {
+                    if (j == m-1 || upper[j] != upper[j+1]) {
+                        clause[2] = negateCode(getCodeLE(y, bs[j]));
+                        clause[3] = upper[j];
+                        problem.addClause(clause);
+                    }
+                    if (j == 0 || lower[j] != lower[j-1]) {
+                        clause[2] = getCodeLE(y, bs[j] - 1);
+                        clause[3] = lower[j];
+                        problem.addClause(clause);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * z = x^k is encoded by (x >= a -> z >= a^k) and (x <= a -> z <= a^k)
+     * when x is non-negative, otherwise by (x = a -> z = a^k).
+     */
+    private void encodePowerLiteral(PowerLiteral lit, int[] clause0) throws SugarException {
+        IntegerVariable z = lit.getV();
+        IntegerVariable x = lit.getV1();
+        int k = lit.getExponent();
+        boolean monotone = x.getDomain().getLowerBound() >= 0;
+        int[] clause = expand(clause0, 3);
+        Iterator<Integer> iter = x.getDomain().values();
+        while (iter.hasNext()) {
+            int a = iter.next();
+            int p = (int)PowerLiteral.power(a, k);
+            clause[0] = getCodeLE(x, a - 1);
+            clause[1] = monotone ? Problem.FALSE_CODE : negateCode(getCodeLE(x, a));
+            clause[2] = negateCode(getCodeLE(z, p - 1));
+            problem.addClause(clause);
+            clause[0] = monotone ? Problem.FALSE_CODE : getCodeLE(x, a - 1);
+            clause[1] = negateCode(getCodeLE(x, a));
+            clause[2] = getCodeLE(z, p);
+            problem.addClause(clause);
+        }
+    }
+
     private void encodeLiteral(Literal lit, int[] clause0) throws SugarException {
         if (lit instanceof BooleanLiteral) {
             clause0 = expand(clause0, 1);
@@ -287,9 +725,9 @@ public class OrderEncoder extends AbstractEncoder {
         } else if (lit instanceof LinearNeLiteral) {
             encodeLinearNeLiteral((LinearNeLiteral)lit, clause0);
         } else if (lit instanceof ProductLiteral) {
-            throw new SugarException("Cannot encode " + lit.toString());
+            encodeProductLiteral((ProductLiteral)lit, clause0);
         } else if (lit instanceof PowerLiteral) {
-            throw new SugarException("Cannot encode " + lit.toString());
+            encodePowerLiteral((PowerLiteral)lit, clause0);
         } else if (lit instanceof HoldLiteral) {
             throw new SugarException("Cannot encode " + lit.toString());
         } else {
@@ -304,7 +742,8 @@ public class OrderEncoder extends AbstractEncoder {
         if (! c.isSimple())
             throw new SugarException("Cannot encode non-simple clause "
                     + c.toString());
-        problem.addComment(c.toString());
+        if (problem.isCommentEnabled())
+            problem.addComment(c.toString());
         try {
             int[] clause = new int[c.simpleSize()];
             List<Integer> groups = new ArrayList<Integer>();
@@ -0,0 +1,220 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import jp.kobe_u.sugar.SugarException;
+
+/**
+ * ParallelGzipWriter writes a gzip member whose blocks are compressed
+ * in parallel (in the same way as pigz).
+ * Each block is deflated independently with the last 32 KiB of the
+ * previous block as its dictionary and ended by a sync flush,
+ * so that the compressed blocks can simply be concatenated.
+ * Blocks are written to the channel in submission order.
+ * @see FileProblem
+ */
+public class ParallelGzipWriter {
+    public static int LEVEL = Deflater.BEST_SPEED;
+
+    public static int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int DICTIONARY_SIZE = 32*1024;
+
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte)0xff
+    };
+
+    /* Empty final block with fixed Huffman codes */
+    private static final byte[] FINAL_BLOCK = { 0x03, 0x00 };
+
+    private class Block {
+        byte[] data;
+        Future<byte[]> output;
+    }
+
+    private FileChannel channel;
+
+    private int blockSize;
+
+    private ExecutorService executor;
+
+    private ArrayDeque<Block> blocks = new ArrayDeque<Block>();
+
+    private ArrayDeque<byte[]> freeBuffers = new ArrayDeque<byte[]>();
+
+    private byte[] previous = null;
+
+    private byte[] retired = null;
+
+    private CRC32 crc = new CRC32();
+
+    private long inputSize = 0;
+
+    private long outputSize = 0;
+
+    public ParallelGzipWriter(FileChannel channel, int blockSize) throws SugarException {
+        this.channel = channel;
+        this.blockSize = blockSize;
+        executor = Executors.newFixedThreadPool(Math.max(1, THREADS), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "gzip");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        writeBytes(GZIP_HEADER);
+    }
+
+    /**
+     * Returns the compressed size written so far.
+     */
+    public long getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Returns an empty buffer of the block size.
+     */
+    public byte[] getBuffer() {
+        byte[] b = freeBuffers.poll();
+        return b == null ? new byte[blockSize] : b;
+    }
+
+    private void writeBytes(byte[] b) throws SugarException {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(b);
+            while (buf.hasRemaining())
+                outputSize += channel.write(buf);
+        } catch (IOException e) {
+            throw new SugarException(e.getMessage(), e);
+        }
+    }
+
+    private static byte[] deflate(byte[] dict, byte[] data, int len) {
+        Deflater deflater = new Deflater(LEVEL, true);
+        if (dict != null)
+            deflater.setDictionary(dict, dict.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+        deflater.setInput(data, 0, len);
+        byte[] out = new byte[len + len / 8 + 64];
+        int pos = 0;
+        while (true) {
+            pos += deflater.deflate(out, pos, out.length - pos, Deflater.SYNC_FLUSH);
+            if (pos < out.length)
+                break;
+            byte[] out1 = new byte[2 * out.length];
+            System.arraycopy(out, 0, out1, 0, pos);
+            out = out1;
+        }
+        deflater.end();
+        byte[] result = new byte[pos];
+        System.arraycopy(out, 0, result, 0, pos);
+        return result;
+    }
+
+    /*
+     * Writes the oldest compressed block.
+     */
+    private void retire() throws SugarException {
+        Block block = blocks.poll();
+        try {
+            writeBytes(block.output.get());
+        } catch (InterruptedException e) {
+            throw new SugarException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new SugarException(e.getMessage(), e);
+        }
+        // the dictionary of the retired block is no longer used
+        if (retired != null && retired.length == blockSize)
+            freeBuffers.add(retired);
+        retired = block.data;
+    }
+
+    /**
+     * Compresses the first len bytes of data.
+     * The buffer should not be modified by the caller after this call.
+     * @param data the buffer obtained by getBuffer()
+     * @param len the number of bytes
+     */
+    public void submit(final byte[] data, final int len) throws SugarException {
+        if (len == 0) {
+            freeBuffers.add(data);
+            return;
+        }
+        crc.update(data, 0, len);
+        inputSize += len;
+        final byte[] dict = previous != null && previous.length >= DICTIONARY_SIZE ? previous : null;
+        Block block = new Block();
+        block.data = data;
+        block.output = executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                return deflate(dict, data, len);
+            }
+        });
+        blocks.add(block);
+        previous = len == data.length ? data : null;
+        while (blocks.size() > 2 * THREADS)
+            retire();
+    }
+
+    /**
+     * Writes the remaining blocks and the gzip trailer.
+     */
+    public void close() throws SugarException {
+        while (! blocks.isEmpty())
+            retire();
+        executor.shutdown();
+        writeBytes(FINAL_BLOCK);
+        int crc32 = (int)crc.getValue();
+        int isize = (int)inputSize;
+        writeBytes(new byte[] {
+                (byte)crc32, (byte)(crc32 >>> 8), (byte)(crc32 >>> 16), (byte)(crc32 >>> 24),
+                (byte)isize, (byte)(isize >>> 8), (byte)(isize >>> 16), (byte)(isize >>> 24)
+        });
+    }
+
+    /**
+     * Returns a gzip member storing data without compression.
+     * Its size only depends on the length of data,
+     * therefore it can be rewritten in place.
+     * @param data the data (less than 64 KiB)
+     * @return the gzip member
+     */
+    public static byte[] storedMember(byte[] data) {
+        int len = data.length;
+        byte[] b = new byte[GZIP_HEADER.length + 5 + len + 8];
+        int pos = 0;
+        for (byte x : GZIP_HEADER)
+            b[pos++] = x;
+        b[pos++] = 0x01;
+        b[pos++] = (byte)len;
+        b[pos++] = (byte)(len >>> 8);
+        b[pos++] = (byte)~len;
+        b[pos++] = (byte)(~len >>> 8);
+        for (byte x : data)
+            b[pos++] = x;
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        int crc32 = (int)crc.getValue();
+        b[pos++] = (byte)crc32;
+        b[pos++] = (byte)(crc32 >>> 8);
+        b[pos++] = (byte)(crc32 >>> 16);
+        b[pos++] = (byte)(crc32 >>> 24);
+        b[pos++] = (byte)len;
+        b[pos++] = (byte)(len >>> 8);
+        b[pos++] = (byte)(len >>> 16);
+        b[pos++] = (byte)(len >>> 24);
+        return b;
+    }
+
+}
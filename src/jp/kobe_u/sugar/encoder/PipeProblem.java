@@ -0,0 +1,161 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import jp.kobe_u.sugar.Logger;
+import jp.kobe_u.sugar.SugarException;
+
+/**
+ * PipeProblem streams SAT clauses in DIMACS CNF format into the standard
+ * input of a SAT solver process while encoding is running.
+ * The solver output is written to a file.
+ * Since the header can not be updated afterwards, the numbers of variables
+ * and clauses should be given in advance (for example, by encoding into
+ * a CountingProblem first), since encoders may add SAT variables
+ * after the first clause.
+ * When the number of clauses is negative, no "p cnf" line is written.
+ * Groups are not supported.
+ */
+public class PipeProblem extends Problem {
+    public static int PIPE_BUFFER_SIZE = 64*1024;
+
+    private String[] command;
+
+    private int expectedVariablesCount;
+
+    private int expectedClausesCount;
+
+    private Process process = null;
+
+    private WritableByteChannel channel = null;
+
+    private ByteBuffer buffer = null;
+
+    private boolean headerWritten = false;
+
+    private int exitValue = -1;
+
+    /**
+     * Starts a solver process.
+     * @param command the solver command reading CNF from the standard input
+     * @param outFileName the file name for the standard output of the solver
+     * @param variablesCount the number of variables in the header
+     * @param clausesCount the number of clauses in the header (or -1)
+     */
+    public PipeProblem(String[] command, String outFileName, int variablesCount, int clausesCount) throws SugarException {
+        this.command = command;
+        this.expectedVariablesCount = variablesCount;
+        this.expectedClausesCount = clausesCount;
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(new File(outFileName));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            throw new SugarException(e.getMessage(), e);
+        }
+        channel = Channels.newChannel(process.getOutputStream());
+        buffer = ByteBuffer.allocate(PIPE_BUFFER_SIZE);
+        clear();
+    }
+
+    public int getExitValue() {
+        return exitValue;
+    }
+
+    private void flush() throws SugarException {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        } catch (IOException e) {
+            throw new SugarException("Writing to " + command[0] + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void write(byte[] b) throws SugarException {
+        int pos = 0;
+        while (pos < b.length) {
+            if (! buffer.hasRemaining())
+                flush();
+            int n = Math.min(b.length - pos, buffer.remaining());
+            buffer.put(b, pos, n);
+            pos += n;
+        }
+        fileSize += b.length;
+    }
+
+    private void writeHeader() throws SugarException {
+        if (headerWritten)
+            return;
+        headerWritten = true;
+        if (expectedClausesCount >= 0)
+            write(("p cnf " + Math.max(variablesCount, expectedVariablesCount)
+                    + " " + expectedClausesCount + "\n").getBytes());
+    }
+
+    @Override
+    public void cancel() throws SugarException {
+        throw new SugarException("cancel is not supported for " + command[0]);
+    }
+
+    @Override
+    public void setGroups(int groups, int topWeight) throws SugarException {
+        if (groups > 0)
+            throw new SugarException("Groups are not supported for " + command[0]);
+    }
+
+    @Override
+    public void addNormalizedClause(int[] clause) throws SugarException {
+        writeHeader();
+        int len = 0;
+        for (int code : clause) {
+            if (buffer.remaining() < 12)
+                flush();
+            int pos = buffer.position();
+            FileProblem.putInt(buffer, code);
+            len += buffer.position() - pos;
+        }
+        if (buffer.remaining() < 2)
+            flush();
+        buffer.put((byte)'0');
+        buffer.put((byte)'\n');
+        fileSize += len + 2;
+    }
+
+    /**
+     * Closes the standard input of the solver and waits for its termination.
+     */
+    @Override
+    public void done() throws SugarException {
+        if (clausesCount == 0) {
+            if (variablesCount == 0)
+                variablesCount++;
+            addNormalizedClause(new int[] { 1, -1 });
+            clausesCount++;
+        }
+        writeHeader();
+        flush();
+        try {
+            channel.close();
+            exitValue = process.waitFor();
+        } catch (IOException e) {
+            throw new SugarException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            throw new SugarException(e.getMessage(), e);
+        }
+        Logger.fine(command[0] + " exited with " + exitValue);
+        if (expectedClausesCount >= 0 && expectedClausesCount != clausesCount)
+            throw new SugarException("Internal error: " + clausesCount + " clauses are written"
+                    + " but " + expectedClausesCount + " are expected");
+        if (expectedClausesCount >= 0 && expectedVariablesCount < variablesCount)
+            throw new SugarException("Internal error: " + variablesCount + " variables are used"
+                    + " but " + expectedVariablesCount + " are expected");
+    }
+
+}
@@ -10,6 +10,21 @@ public abstract class Problem {
     public static boolean GWCNF = false;
     public static final int FALSE_CODE = 0;
     public static final int TRUE_CODE = Integer.MIN_VALUE;
+    /**
+     * Drops duplicate clauses in addClause when true.
+     * Clauses in groups are not checked.
+     * @see ClauseTable
+     */
+    public static boolean DEDUP = false;
+    public static int DEDUP_TABLE_SIZE = 1 << 22;
+    /**
+     * Simplifies clauses in addClause by the preceding unit clauses when true.
+     * Satisfied clauses are dropped, false literals are removed,
+     * and the clauses becoming units are written as units.
+     * Clauses in groups are neither simplified nor used.
+     * @see UnitAssignment
+     */
+    public static boolean UNIT_SIMPLIFY = false;
     
     public int groups;
     public int topWeight;
@@ -17,9 +32,19 @@ public abstract class Problem {
     public int variablesCount = 0;
     public int clausesCount = 0;
     public long fileSize = 0;
+    public int duplicatesCount = 0;
+    public int satisfiedCount = 0;
     private int variablesCountSave = 0;
     private int clausesCountSave = 0;
     private long fileSizeSave = 0;
+    private int duplicatesCountSave = 0;
+    private int satisfiedCountSave = 0;
+    private ClauseTable clauseTable = null;
+    private UnitAssignment units = null;
+    /**
+     * Statistics of clauses given to addClause (null if not collected).
+     */
+    public ClauseStats stats = null;
     protected String groupsString = null;
     protected String weightString = null;
     
@@ -27,6 +52,12 @@ public abstract class Problem {
         variablesCount = 0;
         clausesCount = 0;
         fileSize = 0;
+        duplicatesCount = 0;
+        satisfiedCount = 0;
+        if (clauseTable != null)
+            clauseTable.clear();
+        if (units != null)
+            units.clear();
         commit();
     }
     
@@ -34,12 +65,24 @@ public abstract class Problem {
         variablesCountSave = variablesCount;
         clausesCountSave = clausesCount;
         fileSizeSave = fileSize;
+        duplicatesCountSave = duplicatesCount;
+        satisfiedCountSave = satisfiedCount;
+        if (clauseTable != null)
+            clauseTable.commit();
+        if (units != null)
+            units.commit();
     }
     
     public void cancel() throws SugarException {
         variablesCount = variablesCountSave;
         clausesCount = clausesCountSave;
         fileSize = fileSizeSave;
+        duplicatesCount = duplicatesCountSave;
+        satisfiedCount = satisfiedCountSave;
+        if (clauseTable != null)
+            clauseTable.cancel();
+        if (units != null)
+            units.cancel();
     }
     
     public abstract void done() throws SugarException;
@@ -75,30 +118,103 @@ public abstract class Problem {
         return clause;
     }
     
+    /**
+     * Returns true if comments are written by addComment.
+     * Encoders check this before building comment strings.
+     */
+    public boolean isCommentEnabled() {
+        return false;
+    }
+
     public void addComment(String comment) throws SugarException {
     }
 
     public void addPragmaDominant(int code0, int code1) throws SugarException {
     }
 
-    public void setGroups(int groups, int topWeight) {
+    /**
+     * Returns true if SAT variables and clauses are counted by categories.
+     * Encoders call beginCategory only when this is true.
+     * @see CountingProblem
+     */
+    public boolean isCategoryEnabled() {
+        return false;
+    }
+
+    /**
+     * Begins a category of the following SAT variables and clauses.
+     */
+    public void beginCategory(String category) throws SugarException {
+    }
+
+    public void setGroups(int groups, int topWeight) throws SugarException {
         this.groups = groups;
         this.topWeight = topWeight;
     }
     
     public abstract void addNormalizedClause(int[] clause) throws SugarException;
     
+    private boolean isDuplicate(int[] clause) {
+        if (clauseTable == null)
+            clauseTable = new ClauseTable(DEDUP_TABLE_SIZE);
+        if (clauseTable.add(clause))
+            return false;
+        duplicatesCount++;
+        return true;
+    }
+
+    /*
+     * Returns null if the clause is satisfied by the units,
+     * otherwise the clause without false literals.
+     * A clause becoming a unit is added to the units.
+     */
+    private int[] simplifyByUnits(int[] clause) {
+        if (units == null)
+            units = new UnitAssignment();
+        int c = 0;
+        for (int code : clause) {
+            int value = units.value(code);
+            if (value > 0)
+                return null;
+            if (value < 0)
+                c++;
+        }
+        if (c > 0) {
+            int[] clause1 = new int[clause.length - c];
+            int i = 0;
+            for (int code : clause) {
+                if (units.value(code) == 0)
+                    clause1[i++] = code;
+            }
+            clause = clause1;
+        }
+        if (clause.length == 1)
+            units.assign(clause[0]);
+        return clause;
+    }
+
+    private void addEmptyClause() throws SugarException {
+        if (stats != null)
+            stats.addEmptyClause();
+        if (variablesCount == 0)
+            addVariables(1);
+        addNormalizedClause(new int[] { 1 });
+        clausesCount++;
+        addNormalizedClause(new int[] { -1 });
+        clausesCount++;
+    }
+    
     public void addClause(int[] clause) throws SugarException {
+        int length = clause.length;
         clause = normalizeClause(clause);
+        if (stats != null)
+            stats.addFalseLiterals(clause == null ? length : length - clause.length);
         if (clause == null) {
-            if (variablesCount == 0)
-                addVariables(1);
-            addNormalizedClause(new int[] { 1 });
-            clausesCount++;
-            addNormalizedClause(new int[] { -1 });
-            clausesCount++;
+            addEmptyClause();
             return;
         } else if (isValid(clause)) {
+            if (stats != null)
+                stats.addTautology();
             if (SugarMain.debug > 0) {
                 System.out.print("True clause found:");
                 for (int code : clause)
@@ -107,7 +223,26 @@ public abstract class Problem {
             }
             return;
         }
-        addNormalizedClause(clause);
+        if (UNIT_SIMPLIFY && groupsString == null) {
+            clause = simplifyByUnits(clause);
+            if (clause == null) {
+                satisfiedCount++;
+                return;
+            } else if (clause.length == 0) {
+                addEmptyClause();
+                return;
+            }
+        }
+        if (DEDUP && groupsString == null && isDuplicate(clause)) {
+            return;
+        }
+        if (stats == null) {
+            addNormalizedClause(clause);
+        } else {
+            long size = fileSize;
+            addNormalizedClause(clause);
+            stats.addClause(clause.length, fileSize - size);
+        }
         clausesCount++;
     }
     
@@ -150,6 +285,8 @@ public abstract class Problem {
         return
         variablesCount + " SAT variables, " +
         clausesCount + " SAT clauses, " +
+        (DEDUP ? duplicatesCount + " duplicates removed, " : "") +
+        (UNIT_SIMPLIFY ? satisfiedCount + " satisfied clauses removed, " : "") +
         fileSize + " bytes";
     }
 
@@ -0,0 +1,72 @@
+package jp.kobe_u.sugar.encoder;
+
+import java.util.Arrays;
+
+/**
+ * UnitAssignment keeps the values of SAT variables fixed by unit clauses
+ * so that the following clauses can be simplified.
+ * Assignments after the last commit() can be undone by cancel().
+ * @see Problem#UNIT_SIMPLIFY
+ */
+public class UnitAssignment {
+    /*
+     * 1 if true, -1 if false, and 0 if unknown for each SAT variable
+     */
+    private byte[] values = new byte[1024];
+
+    private int[] journal = new int[256];
+
+    private int journalSize = 0;
+
+    private int size = 0;
+
+    /**
+     * Returns 1 if the literal is true, -1 if it is false,
+     * and 0 if it is unknown.
+     */
+    public int value(int code) {
+        int x = Math.abs(code);
+        if (x >= values.length)
+            return 0;
+        return code > 0 ? values[x] : - values[x];
+    }
+
+    /**
+     * Makes the literal true.
+     */
+    public void assign(int code) {
+        int x = Math.abs(code);
+        if (x >= values.length)
+            values = Arrays.copyOf(values, Math.max(2 * values.length, x + 1));
+        values[x] = (byte)(code > 0 ? 1 : -1);
+        size++;
+        if (journalSize == journal.length)
+            journal = Arrays.copyOf(journal, 2 * journal.length);
+        journal[journalSize++] = x;
+    }
+
+    /**
+     * Returns the number of assigned SAT variables.
+     */
+    public int size() {
+        return size;
+    }
+
+    public void commit() {
+        journalSize = 0;
+    }
+
+    public void cancel() {
+        while (journalSize > 0) {
+            values[journal[--journalSize]] = 0;
+            size--;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(values, (byte)0);
+        size = 0;
+        journalSize = 0;
+    }
+
+}
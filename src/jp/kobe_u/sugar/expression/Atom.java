@@ -6,6 +6,10 @@ package jp.kobe_u.sugar.expression;
  */
 public class Atom extends Expression {
     private Comparable atom;
+    /*
+     * Set only for the canonical atoms of operators
+     */
+    int opcode = OP_NONE;
 
     public Atom(Comparable atom) {
         this.atom = atom;
@@ -76,6 +80,8 @@ public class Atom extends Expression {
         if (getClass() != obj.getClass())
             return false;
         final Atom other = (Atom) obj;
+        if (interned && other.interned)
+            return false;
         if (atom == null) {
             if (other.atom != null)
                 return false;
@@ -2,7 +2,6 @@ package jp.kobe_u.sugar.expression;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
@@ -14,11 +13,64 @@ import jp.kobe_u.sugar.csp.IntegerVariable;
  * @author Naoyuki Tamura (tamura@kobe-u.ac.jp)
  */
 public abstract class Expression implements Comparable<Expression> {
+    /**
+     * Sequences are hash-consed when true,
+     * that is, structurally equal sequences are the same instance.
+     * Atoms are always hash-consed.
+     */
     public static boolean intern = false;
-    // public static final int MAX_MAP_SIZE = 100000;
-    public static final int MAX_MAP_SIZE = 10000;
-    private static HashMap<Expression,Expression> map =
-        new HashMap<Expression,Expression>();
+    /*
+     * Opcodes of operators, which are used to dispatch by switch statements.
+     * OP_NONE is the opcode of atoms other than operators.
+     */
+    public static final int OP_NONE = 0;
+    public static final int OP_DOMAIN_DEFINITION = 1;
+    public static final int OP_INT_DEFINITION = 2;
+    public static final int OP_DINT_DEFINITION = 3;
+    public static final int OP_BOOL_DEFINITION = 4;
+    public static final int OP_DBOOL_DEFINITION = 5;
+    public static final int OP_PREDICATE_DEFINITION = 6;
+    public static final int OP_RELATION_DEFINITION = 7;
+    public static final int OP_OBJECTIVE_DEFINITION = 8;
+    public static final int OP_GROUPS_DEFINITION = 9;
+    public static final int OP_NOT = 10;
+    public static final int OP_AND = 11;
+    public static final int OP_OR = 12;
+    public static final int OP_IMP = 13;
+    public static final int OP_XOR = 14;
+    public static final int OP_IFF = 15;
+    public static final int OP_EQ = 16;
+    public static final int OP_NE = 17;
+    public static final int OP_LE = 18;
+    public static final int OP_LT = 19;
+    public static final int OP_GE = 20;
+    public static final int OP_GT = 21;
+    public static final int OP_NEG = 22;
+    public static final int OP_ABS = 23;
+    public static final int OP_ADD = 24;
+    public static final int OP_SUB = 25;
+    public static final int OP_MUL = 26;
+    public static final int OP_DIV = 27;
+    public static final int OP_MOD = 28;
+    public static final int OP_POW = 29;
+    public static final int OP_MIN = 30;
+    public static final int OP_MAX = 31;
+    public static final int OP_IF = 32;
+    public static final int OP_ALLDIFFERENT = 33;
+    public static final int OP_WEIGHTEDSUM = 34;
+    public static final int OP_CUMULATIVE = 35;
+    public static final int OP_ELEMENT = 36;
+    public static final int OP_DISJUNCTIVE = 37;
+    public static final int OP_LEX_LESS = 38;
+    public static final int OP_LEX_LESSEQ = 39;
+    public static final int OP_NVALUE = 40;
+    public static final int OP_COUNT = 41;
+    public static final int OP_GLOBAL_CARDINALITY = 42;
+    public static final int OP_GLOBAL_CARDINALITY_WITH_COSTS = 43;
+    public static final int OP_HOLD = 44;
+    public static final int OP_LABEL = 45;
+    private static ExpressionTable atoms = new ExpressionTable();
+    private static ExpressionTable sequences = new ExpressionTable();
     public static final Expression DOMAIN_DEFINITION =
             create(SugarConstants.DOMAIN_DEFINITION);
     public static final Expression INT_DEFINITION =
@@ -120,9 +172,9 @@ public abstract class Expression implements Comparable<Expression> {
     public static final Expression NIL =
                 create(SugarConstants.NIL);
     public static final Expression ZERO =
-            intern(new Atom(0));
+            atoms.intern(new Atom(0));
     public static final Expression ONE =
-            intern(new Atom(1));
+            atoms.intern(new Atom(1));
     public static final Expression WEIGHTED =
             create(SugarConstants.WEIGHTED);
     public static final Expression ANY =
@@ -132,6 +184,10 @@ public abstract class Expression implements Comparable<Expression> {
     public static final Expression GROUPS_DEFINITION =
             create(SugarConstants.GROPUS_DEFINITION);
     private String comment = null; 
+    /*
+     * true if this is the canonical instance in the table
+     */
+    boolean interned = false;
     
     private static HashSet<Expression> operators;
     
@@ -190,17 +246,60 @@ public abstract class Expression implements Comparable<Expression> {
                 // ONE,
                 WEIGHTED
                 ));
-    }
-    
-    private static Expression intern(Expression x) {
+        setOpcode(DOMAIN_DEFINITION, OP_DOMAIN_DEFINITION);
+        setOpcode(INT_DEFINITION, OP_INT_DEFINITION);
+        setOpcode(DINT_DEFINITION, OP_DINT_DEFINITION);
+        setOpcode(BOOL_DEFINITION, OP_BOOL_DEFINITION);
+        setOpcode(DBOOL_DEFINITION, OP_DBOOL_DEFINITION);
+        setOpcode(PREDICATE_DEFINITION, OP_PREDICATE_DEFINITION);
+        setOpcode(RELATION_DEFINITION, OP_RELATION_DEFINITION);
+        setOpcode(OBJECTIVE_DEFINITION, OP_OBJECTIVE_DEFINITION);
+        setOpcode(GROUPS_DEFINITION, OP_GROUPS_DEFINITION);
+        setOpcode(NOT, OP_NOT);
+        setOpcode(AND, OP_AND);
+        setOpcode(OR, OP_OR);
+        setOpcode(IMP, OP_IMP);
+        setOpcode(XOR, OP_XOR);
+        setOpcode(IFF, OP_IFF);
+        setOpcode(EQ, OP_EQ);
+        setOpcode(NE, OP_NE);
+        setOpcode(LE, OP_LE);
+        setOpcode(LT, OP_LT);
+        setOpcode(GE, OP_GE);
+        setOpcode(GT, OP_GT);
+        setOpcode(NEG, OP_NEG);
+        setOpcode(ABS, OP_ABS);
+        setOpcode(ADD, OP_ADD);
+        setOpcode(SUB, OP_SUB);
+        setOpcode(MUL, OP_MUL);
+        setOpcode(DIV, OP_DIV);
+        setOpcode(MOD, OP_MOD);
+        setOpcode(POW, OP_POW);
+        setOpcode(MIN, OP_MIN);
+        setOpcode(MAX, OP_MAX);
+        setOpcode(IF, OP_IF);
+        setOpcode(ALLDIFFERENT, OP_ALLDIFFERENT);
+        setOpcode(WEIGHTEDSUM, OP_WEIGHTEDSUM);
+        setOpcode(CUMULATIVE, OP_CUMULATIVE);
+        setOpcode(ELEMENT, OP_ELEMENT);
+        setOpcode(DISJUNCTIVE, OP_DISJUNCTIVE);
+        setOpcode(LEX_LESS, OP_LEX_LESS);
+        setOpcode(LEX_LESSEQ, OP_LEX_LESSEQ);
+        setOpcode(NVALUE, OP_NVALUE);
+        setOpcode(COUNT, OP_COUNT);
+        setOpcode(GLOBAL_CARDINALITY, OP_GLOBAL_CARDINALITY);
+        setOpcode(GLOBAL_CARDINALITY_WITH_COSTS, OP_GLOBAL_CARDINALITY_WITH_COSTS);
+        setOpcode(HOLD, OP_HOLD);
+        setOpcode(LABEL, OP_LABEL);
+    }
+
+    private static void setOpcode(Expression x, int opcode) {
+        ((Atom)x).opcode = opcode;
+    }
+    
+    private static Expression intern(Sequence x) {
         if (intern) {
-            if (! map.containsKey(x)) {
-                if (map.size() < MAX_MAP_SIZE) {
-                    map.put(x, x);
-                }
-            } else {
-                // System.out.println("Found " + x);
-            }
+            return sequences.intern(x);
         }
         return x;
     }
@@ -211,12 +310,12 @@ public abstract class Expression implements Comparable<Expression> {
         } else if (i == 1) {
             return ONE;
         } else {
-            return intern(new Atom(i));
+            return atoms.intern(new Atom(i));
         }
     }
 
     public static Expression create(String token) {
-        return intern(new Atom(token));
+        return atoms.intern(new Atom(token));
     }
 
     public static Expression create(Expression[] expressions) {
@@ -267,8 +366,13 @@ public abstract class Expression implements Comparable<Expression> {
         return create(xs0);
     }
 
+    /**
+     * Removes unused expressions from the hash-consing table.
+     * Canonical expressions are kept since they are compared by identity.
+     */
     public static void clear() {
-        map.clear();
+        atoms.expunge();
+        sequences.expunge();
     }
     
     public boolean isAtom() {
@@ -299,6 +403,15 @@ public abstract class Expression implements Comparable<Expression> {
         return false;
     }
 
+    /**
+     * Returns the opcode of the operator when the expression is a sequence,
+     * otherwise OP_NONE.
+     * @return the opcode
+     */
+    public int getOpcode() {
+        return OP_NONE;
+    }
+
     public String stringValue() {
         return null;
     }
@@ -617,37 +730,50 @@ public abstract class Expression implements Comparable<Expression> {
     }
     
     public static boolean isLogical(Expression x) {
-        return x.equals(FALSE) ||
-                x.equals(TRUE) ||
-                x.isSequence(Expression.NOT) ||
-                x.isSequence(Expression.AND) ||
-                x.isSequence(Expression.OR) ||
-                x.isSequence(Expression.IMP) ||
-                x.isSequence(Expression.XOR) ||
-                x.isSequence(Expression.IFF);
+        switch (x.getOpcode()) {
+        case OP_NOT:
+        case OP_AND:
+        case OP_OR:
+        case OP_IMP:
+        case OP_XOR:
+        case OP_IFF:
+            return true;
+        default:
+            return x.equals(FALSE) || x.equals(TRUE);
+        }
     }
     
     public static boolean isComparison(Expression x) {
-        return x.isSequence(Expression.EQ) ||
-                x.isSequence(Expression.NE) ||
-                x.isSequence(Expression.LE) ||
-                x.isSequence(Expression.LT) ||
-                x.isSequence(Expression.GE) ||
-                x.isSequence(Expression.GT);
+        switch (x.getOpcode()) {
+        case OP_EQ:
+        case OP_NE:
+        case OP_LE:
+        case OP_LT:
+        case OP_GE:
+        case OP_GT:
+            return true;
+        default:
+            return false;
+        }
     }
     
     public static boolean isGlobalConstraint(Expression x) {
-        return x.isSequence(Expression.ALLDIFFERENT) ||
-                x.isSequence(Expression.WEIGHTEDSUM) ||
-                x.isSequence(Expression.CUMULATIVE) ||
-                x.isSequence(Expression.ELEMENT) ||
-                x.isSequence(Expression.DISJUNCTIVE) ||
-                x.isSequence(Expression.LEX_LESS) ||
-                x.isSequence(Expression.LEX_LESSEQ) ||
-                x.isSequence(Expression.NVALUE) ||
-                x.isSequence(Expression.COUNT) ||
-                x.isSequence(Expression.GLOBAL_CARDINALITY) ||
-                x.isSequence(Expression.GLOBAL_CARDINALITY_WITH_COSTS);
+        switch (x.getOpcode()) {
+        case OP_ALLDIFFERENT:
+        case OP_WEIGHTEDSUM:
+        case OP_CUMULATIVE:
+        case OP_ELEMENT:
+        case OP_DISJUNCTIVE:
+        case OP_LEX_LESS:
+        case OP_LEX_LESSEQ:
+        case OP_NVALUE:
+        case OP_COUNT:
+        case OP_GLOBAL_CARDINALITY:
+        case OP_GLOBAL_CARDINALITY_WITH_COSTS:
+            return true;
+        default:
+            return false;
+        }
     }
     
     public static void appendString(StringBuilder sb, int[] xs) {
@@ -0,0 +1,97 @@
+package jp.kobe_u.sugar.expression;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * ExpressionTable is a hash-consing table of expressions.
+ * Values are weakly referenced so that expressions no longer used
+ * can be garbage collected.
+ * Since the children of a sequence are canonical,
+ * structural equality is checked only one level deep.
+ * @see Expression#intern
+ */
+class ExpressionTable {
+    private static final class Entry extends WeakReference<Expression> {
+        final int hash;
+        Entry next;
+
+        Entry(Expression x, int hash, Entry next, ReferenceQueue<Expression> queue) {
+            super(x, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private Entry[] table = new Entry[1 << 12];
+
+    private int size = 0;
+
+    private ReferenceQueue<Expression> queue = new ReferenceQueue<Expression>();
+
+    /**
+     * Returns the canonical expression structurally equal to x.
+     * x itself is registered when there is no such expression.
+     */
+    synchronized Expression intern(Expression x) {
+        expunge();
+        int hash = x.hashCode();
+        int i = hash & (table.length - 1);
+        for (Entry e = table[i]; e != null; e = e.next) {
+            if (e.hash == hash) {
+                Expression y = e.get();
+                if (y != null && y.equals(x))
+                    return y;
+            }
+        }
+        x.interned = true;
+        table[i] = new Entry(x, hash, table[i], queue);
+        size++;
+        if (size > table.length - (table.length >> 2))
+            resize();
+        return x;
+    }
+
+    synchronized int size() {
+        expunge();
+        return size;
+    }
+
+    /**
+     * Removes the entries of garbage collected expressions.
+     */
+    synchronized void expunge() {
+        Object ref;
+        while ((ref = queue.poll()) != null) {
+            Entry entry = (Entry)ref;
+            int i = entry.hash & (table.length - 1);
+            Entry prev = null;
+            for (Entry e = table[i]; e != null; e = e.next) {
+                if (e == entry) {
+                    if (prev == null)
+                        table[i] = e.next;
+                    else
+                        prev.next = e.next;
+                    size--;
+                    break;
+                }
+                prev = e;
+            }
+        }
+    }
+
+    private void resize() {
+        Entry[] newTable = new Entry[2 * table.length];
+        for (Entry e : table) {
+            while (e != null) {
+                Entry next = e.next;
+                int i = e.hash & (newTable.length - 1);
+                e.next = newTable[i];
+                newTable[i] = e;
+                e = next;
+            }
+        }
+        table = newTable;
+    }
+
+}
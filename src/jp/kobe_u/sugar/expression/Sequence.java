@@ -14,7 +14,8 @@ import jp.kobe_u.sugar.SugarException;
 public class Sequence extends Expression {
     public static boolean flatten = true;
     private Expression[] expressions;
-    private Integer hashCode = null;
+    private int hashCode;
+    private int opcode;
 
     public Sequence(Expression[] expressions) {
         this.expressions = expressions;
@@ -60,7 +61,22 @@ public class Sequence extends Expression {
                 }
             }
         }
-        hashCode = hashCode();
+        hashCode = hash(expressions);
+        if (expressions.length > 0 && expressions[0] instanceof Atom)
+            opcode = ((Atom)expressions[0]).opcode;
+    }
+
+    /*
+     * The hash value of each element is mixed
+     * since names of variables often differ only in the last characters.
+     */
+    private static int hash(Expression[] expressions) {
+        int h = 1;
+        for (Expression x : expressions) {
+            int k = x.hashCode() * 0x9E3779B9;
+            h = 31 * h + (k ^ (k >>> 16));
+        }
+        return h;
     }
     
     public Expression[] getExpressions() {
@@ -81,6 +97,11 @@ public class Sequence extends Expression {
         return expressions.length >= 1 && expressions[0].equals(x);
     }
 
+    @Override
+    public int getOpcode() {
+        return opcode;
+    }
+
     @Override
     public boolean isSequence(int arity) {
         return expressions.length == arity + 1;
@@ -151,11 +172,6 @@ public class Sequence extends Expression {
      */
     @Override
     public int hashCode() {
-        if (hashCode == null) {
-            final int PRIME = 31;
-            int result = 1;
-            hashCode = PRIME * result + Arrays.hashCode(expressions);
-        }
         return hashCode;
     }
 
@@ -171,8 +187,18 @@ public class Sequence extends Expression {
         if (getClass() != obj.getClass())
             return false;
         final Sequence other = (Sequence) obj;
-        if (!Arrays.equals(expressions, other.expressions))
+        // canonical sequences are equal only when they are identical
+        if (interned && other.interned)
+            return false;
+        if (hashCode != other.hashCode)
             return false;
+        Expression[] xs = other.expressions;
+        if (expressions.length != xs.length)
+            return false;
+        for (int i = 0; i < xs.length; i++) {
+            if (expressions[i] != xs[i] && ! expressions[i].equals(xs[i]))
+                return false;
+        }
         return true;
     }
 
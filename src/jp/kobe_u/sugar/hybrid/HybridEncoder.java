@@ -90,7 +90,7 @@ public class HybridEncoder {
         } else if (value >= v.getDomain().getUpperBound()) {
             return Problem.TRUE_CODE;
         }
-        return v.getCode() + v.getDomain().sizeLE(value) - 1;
+        return v.getCode() + v.sizeLE(value) - 1;
     }
 
     // a * v <= b
@@ -597,11 +597,13 @@ public class HybridEncoder {
             encodeObjective();
         }
         for (IntegerVariable v : csp.getIntegerVariables()) {
-            problem.addComment("Variable " + v);
+            if (problem.isCommentEnabled())
+                problem.addComment("Variable " + v);
             encode(v);
         }
         for (Clause c : csp.getClauses()) {
-            problem.addComment("Constraint " + c);
+            if (problem.isCommentEnabled())
+                problem.addComment("Constraint " + c);
             encode(c);
         }
         problem.done();
@@ -308,18 +308,12 @@ public class PBEncoder {
     }
     
     private int findGe(IntegerVariable v, int b) {
-        int code = v.getCode() - 1;
         IntegerDomain domain = v.getDomain();
-        Iterator<int[]> intervals = domain.intervals();
-        while (intervals.hasNext()) {
-            int[] interval = intervals.next();
-            for (int value = interval[0]; value <= interval[1]; value++) {
-                if (value >= b)
-                    return code;
-                code++;
-            }
-        }
-        return 0;
+        if (b > domain.getUpperBound())
+            return 0;
+        if (b <= domain.getLowerBound())
+            return v.getCode() - 1;
+        return v.getCode() - 1 + v.sizeLE(b - 1);
     }
 
     private List<PBExpr> encodeSimpleLinear(LinearLiteral lit) throws SugarException {
@@ -502,11 +496,13 @@ public class PBEncoder {
             encodeObjective();
         }
         for (IntegerVariable v : csp.getIntegerVariables()) {
-            problem.addComment("Variable " + v + " : " + getIntegerVariableExpr(v));
+            if (problem.isCommentEnabled())
+                problem.addComment("Variable " + v + " : " + getIntegerVariableExpr(v));
             encode(v);
         }
         for (Clause c : csp.getClauses()) {
-            problem.addComment("Constraint " + c);
+            if (problem.isCommentEnabled())
+                problem.addComment("Constraint " + c);
             encode(c);
         }
         problem.done();
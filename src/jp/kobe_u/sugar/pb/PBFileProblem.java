@@ -9,21 +9,33 @@ import java.nio.channels.FileChannel;
 
 import jp.kobe_u.sugar.SugarException;
 import jp.kobe_u.sugar.SugarMain;
+import jp.kobe_u.sugar.encoder.MappedFileWindow;
 
 
 public class PBFileProblem extends PBProblem {
     public static int PB_BUFFER_SIZE = 4*1024;
     
+    public static boolean USE_MMAP = false;
+    
+    public static int MMAP_CHUNK_SIZE = 64*1024*1024;
+    
     public static long MAX_PB_SIZE = 3*1024*1024*1024L;
     
+    private static final int HEADER_SIZE = 64;
+    
     private String pbFileName;
 
     private FileChannel pbFileChannel = null; 
 
     private ByteBuffer pbByteBuffer = null;
     
+    private MappedFileWindow window = null;
+    
+    private final boolean mmap;
+    
     public PBFileProblem(String pbFileName) throws SugarException {
         this.pbFileName = pbFileName;
+        mmap = USE_MMAP;
         clear();
     }
 
@@ -31,30 +43,53 @@ public class PBFileProblem extends PBProblem {
         if (pbFileChannel != null)
             throw new SugarException("Internal error: re-opening file " + pbFileName);
         try {
-            if (fileSize == 0) {
+            if (mmap) {
+                pbFileChannel = (new RandomAccessFile(pbFileName, "rw")).getChannel();
+                if (fileSize == 0)
+                    pbFileChannel.truncate(0);
+                window = new MappedFileWindow(pbFileChannel, HEADER_SIZE, MMAP_CHUNK_SIZE);
+                pbByteBuffer = window.map(fileSize);
+            } else if (fileSize == 0) {
                 pbFileChannel = (new FileOutputStream(pbFileName)).getChannel();
             } else {
                 pbFileChannel = (new RandomAccessFile(pbFileName, "rw")).getChannel();
                 pbFileChannel.position(fileSize);
             }
-            pbByteBuffer = ByteBuffer.allocateDirect(PB_BUFFER_SIZE);
+            if (! mmap)
+                pbByteBuffer = ByteBuffer.allocateDirect(PB_BUFFER_SIZE);
         } catch (IOException e) {
             throw new SugarException(e.getMessage(), e);
         }
     }
 
+    /*
+     * Empties the buffer, or maps the next chunk in memory-mapped mode.
+     */
+    private void advance() throws SugarException {
+        if (mmap) {
+            try {
+                pbByteBuffer = window.advance();
+            } catch (IOException e) {
+                throw new SugarException(e.getMessage(), e);
+            }
+        } else {
+            flush();
+        }
+    }
+    
     public void write(byte[] b) throws SugarException {
         if (pbFileChannel == null)
             open();
         int len = b.length;
-        if (pbByteBuffer.position() + len > PB_BUFFER_SIZE)
-            flush();
+        if (pbByteBuffer.remaining() < len)
+            advance();
         int pos = 0;
-        while (len > PB_BUFFER_SIZE) {
-            pbByteBuffer.put(b, pos, PB_BUFFER_SIZE);
-            flush();
-            pos += PB_BUFFER_SIZE;
-            len -= PB_BUFFER_SIZE;
+        while (len > pbByteBuffer.remaining()) {
+            int n = pbByteBuffer.remaining();
+            pbByteBuffer.put(b, pos, n);
+            advance();
+            pos += n;
+            len -= n;
         }
         pbByteBuffer.put(b, pos, len);
         fileSize += b.length;
@@ -72,6 +107,8 @@ public class PBFileProblem extends PBProblem {
         if (pbFileChannel == null) {
             return;
         }
+        if (mmap)
+            return;
         try {
             pbByteBuffer.flip();
             pbFileChannel.write(pbByteBuffer);
@@ -86,7 +123,13 @@ public class PBFileProblem extends PBProblem {
             return;
         }
         try {
-            flush();
+            if (mmap) {
+                window.putHeader(getHeader());
+                window.close(fileSize);
+                window = null;
+            } else {
+                flush();
+            }
             pbFileChannel.close();
             pbFileChannel = null;
             pbByteBuffer = null;
@@ -95,8 +138,8 @@ public class PBFileProblem extends PBProblem {
         }
     }
     
-    public void update() throws SugarException {
-        int n = 64;
+    private byte[] getHeader() {
+        int n = HEADER_SIZE;
         StringBuilder s = new StringBuilder();
         s.append("* #variable= ");
         s.append(Integer.toString(variablesCount));
@@ -106,15 +149,32 @@ public class PBFileProblem extends PBProblem {
             s.append(" ");
         }
         s.append("\n");
-        String header = s.toString();
+        return s.toString().getBytes();
+    }
+    
+    public void update() throws SugarException {
+        byte[] header = getHeader();
+        if (mmap) {
+            if (pbFileChannel == null)
+                open();
+            window.putHeader(header);
+            if (fileSize == 0)
+                fileSize = header.length;
+            try {
+                pbByteBuffer = window.seek(fileSize);
+            } catch (IOException e) {
+                throw new SugarException(e.getMessage(), e);
+            }
+            return;
+        }
         if (pbFileChannel != null)
             throw new SugarException("Internal error: updating opening file " + pbFileName);
         try {
             RandomAccessFile satFile1 = new RandomAccessFile(pbFileName, "rw");
             satFile1.seek(0);
-            satFile1.write(header.getBytes());
+            satFile1.write(header);
             if (fileSize == 0)
-                fileSize = header.length();
+                fileSize = header.length;
             satFile1.setLength(fileSize);
             satFile1.close();
         } catch (IOException e) {
@@ -135,6 +195,8 @@ public class PBFileProblem extends PBProblem {
         done();
         super.cancel();
         update();
+        if (mmap)
+            close();
     }
     
     public void done() throws SugarException {
@@ -149,9 +211,15 @@ public class PBFileProblem extends PBProblem {
         }
         flush();
         close();
-        update();
+        if (! mmap)
+            update();
     }
     
+    @Override
+    public boolean isCommentEnabled() {
+        return SugarMain.debug >= 1;
+    }
+
     public void addComment(String comment) throws SugarException {
         if (SugarMain.debug >= 1)
             write("* " + comment + "\n");
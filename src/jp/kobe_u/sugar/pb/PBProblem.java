@@ -37,6 +37,14 @@ public abstract class PBProblem {
         return code;
     }
 
+    /**
+     * Returns true if comments are written by addComment.
+     * Encoders check this before building comment strings.
+     */
+    public boolean isCommentEnabled() {
+        return false;
+    }
+
     public void addComment(String comment) throws SugarException {
     }
 